@@ -0,0 +1,147 @@
+package com.networknt.openapi;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures bundling of a generated spec tree end-to-end, and its load, resolve, serialize and validate phases
+ * separately. Resolving includes loading the referenced files, subtract load to get the resolve phase alone. Run
+ * with <code>-prof gc</code> to get allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BundlerBenchmark {
+
+    // models per level
+    @Param({"20", "200"})
+    int width;
+
+    // levels of models
+    @Param({"3"})
+    int depth;
+
+    // references from a model to models of the next level
+    @Param({"3"})
+    int fanOut;
+
+    @Param({"NONE", "ALL_OF", "ONE_OF"})
+    SpecGenerator.Composition composition;
+
+    private Path dir;
+    private Path spec;
+    private Path out;
+    private List<Path> files;
+    private Map<String, Object> bundled;
+    private BundlerProcessor writer;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+
+        dir = Files.createTempDirectory("bundler-benchmark");
+        spec = new SpecGenerator(width, depth, fanOut, composition).generate(dir.resolve("spec"));
+        out = dir.resolve("out");
+        try (Stream<Path> s = Files.walk(dir.resolve("spec"))) {
+            files = s.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        bundled = new BundlerProcessor(spec, out).bundle(spec);
+        writer = processor();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+
+        try (Stream<Path> s = Files.walk(dir)) {
+            for (Path p : s.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Benchmark
+    public void call(Outputs outputs) throws IOException {
+
+        processor().call();
+    }
+
+    @Benchmark
+    public void load(Blackhole bh) throws IOException {
+
+        for (Path f : files) {
+            bh.consume(BundlerCodec.getDefault().<Object>read(f));
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> resolve() throws IOException {
+
+        return processor().bundle(spec);
+    }
+
+    @Benchmark
+    public void serialize(Outputs outputs) throws IOException {
+
+        writer.write(bundled);
+    }
+
+    @Benchmark
+    public boolean validate() {
+
+        writer.validate(bundled, spec);
+        return writer.isValid();
+    }
+
+    private BundlerProcessor processor() {
+
+        BundlerProcessor processor = new BundlerProcessor(spec.getParent().toString(), spec.getFileName().toString(),
+                                                          out.toString(), "openapi.bundled");
+        processor.setOutputJSON(true);
+        processor.setOutputYaml(true);
+        return processor;
+    }
+
+    /**
+     * Deletes the outputs before each invocation of the benchmarks writing them, as outputs that are unchanged are
+     * compared rather than written again.
+     */
+    @State(Scope.Benchmark)
+    public static class Outputs {
+
+        @Setup(Level.Invocation)
+        public void delete(BundlerBenchmark benchmark) throws IOException {
+
+            if (Files.exists(benchmark.out)) {
+                try (Stream<Path> s = Files.list(benchmark.out)) {
+                    for (Path p : s.collect(Collectors.toList())) {
+                        Files.delete(p);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.networknt.openapi;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * Generates a synthetic multi-file spec tree: a spec with one path per model of the first level, and <i>depth</i>
+ * levels of <i>width</i> model files each, where every model references <i>fanOut</i> models of the next level
+ * and shares schemas from a common file, like the geojson test fixtures.
+ */
+public final class SpecGenerator {
+
+    public enum Composition {
+        // plain object properties
+        NONE,
+        // allOf of a referenced model and inline properties
+        ALL_OF,
+        // oneOf with a discriminator mapping
+        ONE_OF
+    }
+
+    private final int width;
+    private final int depth;
+    private final int fanOut;
+    private final Composition composition;
+    private final Yaml yaml;
+
+    SpecGenerator(int width, int depth, int fanOut, Composition composition) {
+
+        this.width = width;
+        this.depth = depth;
+        this.fanOut = fanOut;
+        this.composition = composition;
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        this.yaml = new Yaml(options);
+    }
+
+    /**
+     * Writes the spec tree.
+     *
+     * @param dir the directory to write to
+     * @return the spec
+     * @throws IOException if the files cannot be written
+     */
+    Path generate(Path dir) throws IOException {
+
+        write(dir.resolve("models/common.yaml"), common());
+        for (int d = 0; d < depth; d++) {
+            for (int i = 0; i < width; i++) {
+                write(dir.resolve("models/" + file(d, i)), d == depth - 1 ? leaf(d, i) : model(d, i));
+            }
+        }
+        Path spec = dir.resolve("openapi.yaml");
+        write(spec, spec());
+        return spec;
+    }
+
+    private Map<String, Object> spec() {
+
+        Map<String, Object> paths = new LinkedHashMap<>();
+        for (int i = 0; i < width; i++) {
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("description", "OK");
+            response.put("content", map("application/json", map("schema", ref("models/" + file(0, i)))));
+            Map<String, Object> get = new LinkedHashMap<>();
+            get.put("operationId", "get" + i);
+            get.put("tags", List.of("tag" + i % 10));
+            get.put("responses", map("200", response));
+            paths.put("/resource" + i, map("get", get));
+        }
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("title", "Synthetic " + width + "x" + depth + "x" + fanOut + " " + composition);
+        info.put("version", "1.0.0");
+        Map<String, Object> spec = new LinkedHashMap<>();
+        spec.put("openapi", "3.0.0");
+        spec.put("info", info);
+        spec.put("paths", paths);
+        return spec;
+    }
+
+    private Map<String, Object> model(int d, int i) {
+
+        Map<String, Object> model = new LinkedHashMap<>();
+        model.put("title", name(d, i));
+        List<String> children = new ArrayList<>();
+        for (int k = 0; k < fanOut; k++) {
+            children.add("../" + file(d + 1, (i * fanOut + k) % width));
+        }
+        switch (composition) {
+            case ALL_OF:
+                Map<String, Object> inline = object(properties(children.subList(1, children.size())));
+                model.put("allOf", List.of(ref(children.get(0)), inline));
+                break;
+            case ONE_OF:
+                List<Object> oneOf = new ArrayList<>();
+                Map<String, Object> mapping = new LinkedHashMap<>();
+                for (int k = 0; k < children.size(); k++) {
+                    oneOf.add(ref(children.get(k)));
+                    mapping.put("Kind" + k, children.get(k));
+                }
+                model.put("type", "object");
+                model.put("oneOf", oneOf);
+                Map<String, Object> discriminator = new LinkedHashMap<>();
+                discriminator.put("propertyName", "kind");
+                discriminator.put("mapping", mapping);
+                model.put("discriminator", discriminator);
+                break;
+            default:
+                model.putAll(object(properties(children)));
+        }
+        return model;
+    }
+
+    private Map<String, Object> leaf(int d, int i) {
+
+        Map<String, Object> properties = properties(List.of());
+        properties.put("kind", map("type", "string"));
+        properties.put("name", map("type", "string"));
+        Map<String, Object> leaf = new LinkedHashMap<>();
+        leaf.put("title", name(d, i));
+        leaf.putAll(object(properties));
+        return leaf;
+    }
+
+    private static Map<String, Object> properties(List<String> children) {
+
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("id", ref("../common.yaml#/Id"));
+        properties.put("audit", ref("../common.yaml#/Audit"));
+        for (int k = 0; k < children.size(); k++) {
+            properties.put("child" + k, ref(children.get(k)));
+        }
+        return properties;
+    }
+
+    private static Map<String, Object> common() {
+
+        Map<String, Object> id = new LinkedHashMap<>();
+        id.put("type", "string");
+        id.put("format", "uuid");
+        Map<String, Object> audit = new LinkedHashMap<>();
+        audit.put("createdAt", map("type", "string"));
+        audit.put("createdBy", map("type", "string"));
+        Map<String, Object> common = new LinkedHashMap<>();
+        common.put("Id", id);
+        common.put("Audit", object(audit));
+        return common;
+    }
+
+    private static Map<String, Object> object(Map<String, Object> properties) {
+
+        Map<String, Object> object = new LinkedHashMap<>();
+        object.put("type", "object");
+        object.put("properties", properties);
+        return object;
+    }
+
+    private static Map<String, Object> ref(String pointer) {
+
+        return map("$ref", pointer);
+    }
+
+    private static Map<String, Object> map(String key, Object value) {
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put(key, value);
+        return map;
+    }
+
+    private static String name(int d, int i) {
+
+        return "Model" + d + "_" + i;
+    }
+
+    private static String file(int d, int i) {
+
+        return "level" + d + "/" + name(d, i) + ".yaml";
+    }
+
+    private void write(Path file, Map<String, Object> content) throws IOException {
+
+        Files.createDirectories(file.getParent());
+        try (Writer w = Files.newBufferedWriter(file)) {
+            yaml.dump(content, w);
+        }
+    }
+}
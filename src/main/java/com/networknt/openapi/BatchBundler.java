@@ -0,0 +1,374 @@
+package com.networknt.openapi;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bundles many OpenAPI specifications concurrently inside one process. All processors share one
+ * {@link ReferenceCache}, so model files referenced by several specifications are parsed only once.
+ */
+public class BatchBundler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchBundler.class);
+
+    private final Path baseDir;
+    private final List<Path> specs;
+    private final ReferenceCache referenceCache = new ReferenceCache();
+
+    private Path outputDir;
+    private String outputFile;
+    private boolean outputYaml = true;
+    private boolean outputJSON = false;
+    private boolean outputMinifiedJSON = false;
+    private boolean outputSmile = false;
+    private boolean outputCbor = false;
+    private boolean outputIndex = false;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean parallelLoading = false;
+    private boolean incremental = false;
+    private boolean deduplicate = false;
+    private boolean prune = false;
+    private boolean failOnAmbiguousReferences = false;
+    private boolean canonical = false;
+    private List<BundleSlice> slices = Collections.emptyList();
+    private BundlerLimits limits = new BundlerLimits();
+    private List<ReferenceResolver> resolvers = Collections.singletonList(new FileResolver());
+    private MetricsListener metricsListener;
+
+    /**
+     * @param baseDir the directory the specifications are located in
+     * @param specs the specifications to bundle
+     */
+    public BatchBundler(Path baseDir, List<Path> specs) {
+
+        this.baseDir = baseDir.toAbsolutePath().normalize();
+        this.specs = specs.stream().map(s -> this.baseDir.resolve(s).normalize()).collect(Collectors.toList());
+    }
+
+    /**
+     * Finds the specifications below a directory that match a glob pattern, e.g. <code>**&#47;openapi.yaml</code>.
+     * A leading <code>**&#47;</code> also matches files directly in the directory.
+     *
+     * @param dir the directory to search
+     * @param glob the glob pattern, relative to dir
+     * @return the matching files as absolute paths, sorted
+     * @throws IOException if the directory cannot be walked
+     */
+    public static List<Path> findSpecs(Path dir, String glob) throws IOException {
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        // the glob **/ needs at least one directory
+        PathMatcher top = glob.startsWith("**/") ? FileSystems.getDefault().getPathMatcher("glob:" + glob.substring(3))
+                                                 : matcher;
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile)
+                        .filter(p -> matcher.matches(dir.relativize(p)) || top.matches(dir.relativize(p)))
+                        .map(Path::toAbsolutePath)
+                        .sorted()
+                        .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Reads a manifest file listing one specification per line. Blank lines and lines starting with # are ignored.
+     *
+     * @param dir the directory the listed paths are relative to
+     * @param manifest the manifest file
+     * @return the listed files as absolute paths
+     * @throws IOException if the manifest cannot be read
+     */
+    public static List<Path> readManifest(Path dir, Path manifest) throws IOException {
+
+        return Files.readAllLines(manifest).stream()
+                    .map(String::trim)
+                    .filter(l -> !l.isEmpty() && !l.startsWith("#"))
+                    .map(l -> dir.resolve(l).toAbsolutePath())
+                    .collect(Collectors.toList());
+    }
+
+    /**
+     * Bundles all specifications and waits for completion. A failing specification does not stop the others.
+     *
+     * @return one result per specification, in input order
+     * @throws InterruptedException if interrupted while waiting
+     * @throws BundlerException if several specifications would be bundled to the same files, before any is bundled
+     */
+    public List<Result> call() throws InterruptedException {
+
+        Map<Path, Path> targets = new HashMap<>();
+        for (Path spec : specs) {
+            Path previous = targets.put(target(spec), spec);
+            if (previous != null) {
+                throw new BundlerException("Specifications " + previous + " and " + spec + " would both be bundled to "
+                                                   + target(spec) + ", set distinct output files");
+            }
+        }
+        return forEachSpec(this::bundle);
+    }
+
+    /**
+     * Resolves the references of all specifications concurrently, without writing or validating them, and records
+     * their dependencies. A specification that fails is recorded as failed, with the dependencies found until then.
+     *
+     * @return the dependencies of all specifications, files named relative to the base directory
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public DependencyGraph graph() throws InterruptedException {
+
+        DependencyGraph graph = new DependencyGraph(baseDir);
+        forEachSpec(spec -> {
+            String name = spec.getFileName().toString();
+            BundlerProcessor processor = new BundlerProcessor(spec.getParent().toString(), name,
+                                                              spec.getParent().toString(), name);
+            processor.setReferenceCache(referenceCache);
+            processor.setParallelLoading(parallelLoading);
+            processor.setLimits(limits);
+            processor.setResolvers(resolvers);
+            DependencyGraph dependencies = new DependencyGraph(baseDir);
+            processor.setDependencyGraph(dependencies);
+            try {
+                processor.bundle(spec);
+            } catch (Exception e) {
+                LOG.error("OpenAPI Bundler: Resolving <{}> failed", spec, e);
+                dependencies.addSpec(spec, processor.getDependencies());
+                dependencies.addFailed(spec);
+            }
+            graph.addAll(dependencies);
+            return null;
+        });
+        return graph;
+    }
+
+    private <T> List<T> forEachSpec(Function<Path, T> task) throws InterruptedException {
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (Path spec : specs) {
+                futures.add(pool.submit(() -> task.apply(spec)));
+            }
+            List<T> results = new ArrayList<>();
+            for (Future<T> f : futures) {
+                try {
+                    results.add(f.get());
+                } catch (ExecutionException e) {
+                    throw new BundlerException("Unexpected Exception in OpenAPI Bundler", e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Result bundle(Path spec) {
+
+        long start = System.nanoTime();
+        try {
+            Path target = target(spec);
+            BundlerProcessor processor = new BundlerProcessor(spec.getParent().toString(), spec.getFileName().toString(),
+                                                              target.getParent().toString(), target.getFileName().toString());
+            processor.setOutputYaml(outputYaml);
+            processor.setOutputJSON(outputJSON);
+            processor.setOutputMinifiedJSON(outputMinifiedJSON);
+            processor.setOutputSmile(outputSmile);
+            processor.setOutputCbor(outputCbor);
+            processor.setOutputIndex(outputIndex);
+            processor.setReferenceCache(referenceCache);
+            processor.setParallelLoading(parallelLoading);
+            processor.setIncremental(incremental);
+            processor.setDeduplicate(deduplicate);
+            processor.setPrune(prune);
+            processor.setFailOnAmbiguousReferences(failOnAmbiguousReferences);
+            processor.setCanonical(canonical);
+            processor.setSlices(slices);
+            processor.setLimits(limits);
+            processor.setResolvers(resolvers);
+            processor.setMetricsListener(metricsListener);
+            processor.call();
+            if (!processor.isValid()) {
+                throw new BundlerException("Bundled definition is not valid: "
+                                                   + processor.getValidationResults().getItems());
+            }
+            return new Result(spec, System.nanoTime() - start, null);
+        } catch (Exception e) {
+            LOG.error("OpenAPI Bundler: Bundling of <{}> failed", spec, e);
+            return new Result(spec, System.nanoTime() - start, e);
+        }
+    }
+
+    /**
+     * @return the output directory and file name of a specification, without the format extension
+     */
+    private Path target(Path spec) {
+
+        Path dir = outputDir == null ? spec.getParent() : outputDir.resolve(baseDir.relativize(spec.getParent()));
+        String name = spec.getFileName().toString();
+        return dir.resolve(outputFile != null ? outputFile : name.replaceFirst("\\.(json|ya?ml)$", "") + ".bundled")
+                  .toAbsolutePath().normalize();
+    }
+
+    /**
+     * @param outputDir root of the output tree, the layout below baseDir is mirrored. Default: next to each spec
+     */
+    public void setOutputDir(Path outputDir) {
+
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * @param outputFile name of the bundled files. Default: name of the spec with a .bundled suffix
+     */
+    public void setOutputFile(String outputFile) {
+
+        this.outputFile = outputFile;
+    }
+
+    public void setOutputYaml(boolean outputYaml) {
+
+        this.outputYaml = outputYaml;
+    }
+
+    public void setOutputJSON(boolean outputJSON) {
+
+        this.outputJSON = outputJSON;
+    }
+
+    public void setOutputMinifiedJSON(boolean outputMinifiedJSON) {
+
+        this.outputMinifiedJSON = outputMinifiedJSON;
+    }
+
+    public void setOutputSmile(boolean outputSmile) {
+
+        this.outputSmile = outputSmile;
+    }
+
+    public void setOutputCbor(boolean outputCbor) {
+
+        this.outputCbor = outputCbor;
+    }
+
+    public void setOutputIndex(boolean outputIndex) {
+
+        this.outputIndex = outputIndex;
+    }
+
+    public void setThreads(int threads) {
+
+        this.threads = threads;
+    }
+
+    public void setParallelLoading(boolean parallelLoading) {
+
+        this.parallelLoading = parallelLoading;
+    }
+
+    public void setIncremental(boolean incremental) {
+
+        this.incremental = incremental;
+    }
+
+    public void setDeduplicate(boolean deduplicate) {
+
+        this.deduplicate = deduplicate;
+    }
+
+    public void setPrune(boolean prune) {
+
+        this.prune = prune;
+    }
+
+    public void setFailOnAmbiguousReferences(boolean failOnAmbiguousReferences) {
+
+        this.failOnAmbiguousReferences = failOnAmbiguousReferences;
+    }
+
+    public void setCanonical(boolean canonical) {
+
+        this.canonical = canonical;
+    }
+
+    /**
+     * @param slices slices written next to the bundle of every specification that has their operations
+     */
+    public void setSlices(List<BundleSlice> slices) {
+
+        this.slices = slices;
+    }
+
+    public void setLimits(BundlerLimits limits) {
+
+        this.limits = limits;
+    }
+
+    /**
+     * @param resolvers how references that are not relative paths are resolved, shared by all specifications so
+     * that each remote file is resolved once
+     */
+    public void setResolvers(List<ReferenceResolver> resolvers) {
+
+        this.resolvers = resolvers;
+    }
+
+    /**
+     * @param metricsListener listener notified with the metrics of every spec, from the bundling threads
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Outcome of bundling a single specification.
+     */
+    public static class Result {
+
+        private final Path spec;
+        private final long nanos;
+        private final Exception error;
+
+        Result(Path spec, long nanos, Exception error) {
+
+            this.spec = spec;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        public Path getSpec() {
+
+            return spec;
+        }
+
+        public long getMillis() {
+
+            return nanos / 1_000_000;
+        }
+
+        public Exception getError() {
+
+            return error;
+        }
+
+        public boolean isSuccess() {
+
+            return error == null;
+        }
+    }
+}
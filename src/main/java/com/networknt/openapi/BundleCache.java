@@ -0,0 +1,164 @@
+package com.networknt.openapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the files a bundle was built from, with a content hash of each, so that an unchanged bundle can be
+ * detected without parsing anything. The hashes of the outputs are recorded too, so that outputs found identical to
+ * those of the last run are known to be valid. The record is kept as a small JSON file next to the bundled output.
+ */
+class BundleCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BundleCache.class);
+    private static final ObjectMapper mapper = BundlerCodec.getDefault().getJsonMapper();
+
+    private static final String OPTIONS = "options";
+    private static final String OUTPUTS = "outputs";
+    private static final String FILES = "files";
+    private static final String DIGESTS = "digests";
+
+    private final Path cacheFile;
+
+    BundleCache(Path cacheFile) {
+
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Checks whether the outputs recorded by the last run still exist with the recorded content, were produced with
+     * the same options, and none of the input files changed since.
+     *
+     * @param options the options of the current run
+     * @param outputs the outputs of the current run
+     * @return true if bundling can be skipped
+     */
+    boolean isUpToDate(String options, List<Path> outputs) {
+
+        if (!Files.exists(cacheFile)) {
+            return false;
+        }
+        try {
+            Map<String, Object> record = BundlerProcessor.castIt(mapper.readValue(cacheFile.toFile(), Map.class));
+            if (!options.equals(record.get(OPTIONS)) || !names(outputs).equals(record.get(OUTPUTS))
+                || !hasOutputs(record, outputs)) {
+                return false;
+            }
+            Map<String, Object> files = BundlerProcessor.castIt(record.get(FILES));
+            for (Map.Entry<String, Object> e : files.entrySet()) {
+                Path p = Paths.get(e.getKey());
+                if (!Files.exists(p) || !e.getValue().equals(hash(p))) {
+                    LOG.debug("OpenAPI Bundler: input {} changed", p);
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("OpenAPI Bundler: ignoring unreadable cache file {}", cacheFile, e);
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether the outputs are those recorded by the last run, with the same options. Only valid bundles are
+     * recorded, so outputs that did not change need not be validated again.
+     *
+     * @param options the options of the current run
+     * @param outputs the outputs of the current run
+     * @return true if the content of every output is the recorded one
+     */
+    boolean isValidated(String options, List<Path> outputs) {
+
+        if (!Files.exists(cacheFile)) {
+            return false;
+        }
+        try {
+            Map<String, Object> record = BundlerProcessor.castIt(mapper.readValue(cacheFile.toFile(), Map.class));
+            return options.equals(record.get(OPTIONS)) && hasOutputs(record, outputs);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("OpenAPI Bundler: ignoring unreadable cache file {}", cacheFile, e);
+            return false;
+        }
+    }
+
+    /**
+     * Records the inputs and outputs of a completed run.
+     *
+     * @param options the options of the run
+     * @param outputs the files written
+     * @param inputs every file the bundle was built from, with the hash of the bytes it was parsed from
+     * @throws IOException if the outputs cannot be read or the cache cannot be written
+     */
+    void save(String options, List<Path> outputs, Map<Path, String> inputs) throws IOException {
+
+        Map<String, Object> files = new LinkedHashMap<>();
+        inputs.forEach((p, digest) -> files.put(p.toAbsolutePath().normalize().toString(), digest));
+        Map<String, Object> digests = new LinkedHashMap<>();
+        for (Path p : outputs) {
+            digests.put(p.getFileName().toString(), hash(p));
+        }
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put(OPTIONS, options);
+        record.put(OUTPUTS, names(outputs));
+        record.put(FILES, files);
+        record.put(DIGESTS, digests);
+        mapper.writerWithDefaultPrettyPrinter().writeValue(cacheFile.toFile(), record);
+    }
+
+    /**
+     * @return true if every output has the content recorded
+     */
+    private static boolean hasOutputs(Map<String, Object> record, List<Path> outputs) throws IOException {
+
+        Map<String, Object> digests = BundlerProcessor.castIt(record.get(DIGESTS));
+        if (digests == null) {
+            return false;
+        }
+        for (Path output : outputs) {
+            if (!Files.exists(output) || !hash(output).equals(digests.get(output.getFileName().toString()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> names(List<Path> outputs) {
+
+        List<String> names = new ArrayList<>();
+        outputs.forEach(p -> names.add(p.getFileName().toString()));
+        return names;
+    }
+
+    static String hash(Path p) throws IOException {
+
+        MessageDigest digest = newDigest();
+        digest.update(Files.readAllBytes(p));
+        return hex(digest);
+    }
+
+    static MessageDigest newDigest() {
+
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new BundlerException("SHA-256 is not available", e);
+        }
+    }
+
+    static String hex(MessageDigest digest) {
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
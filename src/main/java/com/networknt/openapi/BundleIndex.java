@@ -0,0 +1,236 @@
+package com.networknt.openapi;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads entries of a bundled JSON spec without parsing all of it, through the sidecar index written next to it,
+ * <code>&lt;bundle&gt;.idx</code>. The index maps the pointer of each path item and component, e.g.
+ * <code>#/components/schemas/Pet</code> or <code>#/paths/~1pets</code>, to the byte offset and length of its
+ * value in the bundle, along with the size and SHA-256 hash of the bundle it was written for. The bundle is
+ * memory-mapped and only the entries looked up are parsed.
+ *
+ * An index is safe to share between threads once opened.
+ */
+public class BundleIndex {
+
+    /**
+     * Suffix of the sidecar index of a bundle.
+     */
+    public static final String SUFFIX = ".idx";
+
+    private static final ObjectMapper mapper = BundlerCodec.getDefault().getJsonMapper();
+
+    private static final String FILE = "file";
+    private static final String SIZE = "size";
+    private static final String DIGEST = "digest";
+    private static final String POINTERS = "pointers";
+
+    private final ByteBuffer content;
+    private final Map<String, long[]> pointers;
+
+    private BundleIndex(ByteBuffer content, Map<String, long[]> pointers) {
+
+        this.content = content;
+        this.pointers = pointers;
+    }
+
+    /**
+     * Opens a bundle through its index, checking only that the bundle has the size the index was written for, see
+     * {@link #open(Path, boolean)}.
+     *
+     * @param bundle the bundled JSON spec
+     * @return the index
+     * @throws IOException if the bundle or its index cannot be read
+     * @throws BundlerException if the index was written for a bundle of another size
+     */
+    public static BundleIndex open(Path bundle) throws IOException {
+
+        return open(bundle, false);
+    }
+
+    /**
+     * Opens a bundle through its index.
+     *
+     * @param bundle the bundled JSON spec
+     * @param verify true to also check the hash of the bundle, which reads all of it, e.g. when the bundle may have
+     * been rebuilt with the same size without its index
+     * @return the index
+     * @throws IOException if the bundle or its index cannot be read
+     * @throws BundlerException if the index was not written for this version of the bundle
+     */
+    public static BundleIndex open(Path bundle, boolean verify) throws IOException {
+
+        Map<String, Object> index = BundlerProcessor.castIt(
+                mapper.readValue(bundle.resolveSibling(bundle.getFileName() + SUFFIX).toFile(), Map.class));
+        Map<String, long[]> pointers = new LinkedHashMap<>();
+        Map<String, Object> entries = BundlerProcessor.castIt(index.get(POINTERS));
+        for (Map.Entry<String, Object> e : entries.entrySet()) {
+            List<Number> range = BundlerProcessor.castIt(e.getValue());
+            pointers.put(e.getKey(), new long[] {range.get(0).longValue(), range.get(1).longValue()});
+        }
+        try (FileChannel channel = FileChannel.open(bundle, StandardOpenOption.READ)) {
+            if (channel.size() != ((Number) index.get(SIZE)).longValue()) {
+                throw new BundlerException("Index of " + bundle + " is out of date, it was written for "
+                                                   + index.get(SIZE) + " bytes");
+            }
+            // the mapping stays valid once the channel is closed
+            ByteBuffer content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (verify && !BundleCache.hex(digest(content)).equals(index.get(DIGEST))) {
+                throw new BundlerException("Index of " + bundle + " is out of date, it was written for another "
+                                                   + "content of the same size");
+            }
+            return new BundleIndex(content, pointers);
+        }
+    }
+
+    private static MessageDigest digest(ByteBuffer content) {
+
+        MessageDigest digest = BundleCache.newDigest();
+        digest.update(content.duplicate());
+        return digest;
+    }
+
+    /**
+     * @return the indexed pointers, in the order of the bundle
+     */
+    public Set<String> getPointers() {
+
+        return Collections.unmodifiableSet(pointers.keySet());
+    }
+
+    /**
+     * Parses an entry of the bundle. Pointers below an indexed entry, e.g.
+     * <code>#/components/schemas/Pet/properties/name</code>, parse the indexed entry and return the part pointed to.
+     *
+     * @param pointer the pointer of the entry, starting with <code>#</code>
+     * @return the entry, or null if the bundle has no such entry or it is not below an indexed one
+     */
+    public JsonNode get(String pointer) {
+
+        String indexed = pointer;
+        while (!pointers.containsKey(indexed)) {
+            int slash = indexed.lastIndexOf('/');
+            if (slash < 0) {
+                return null;
+            }
+            indexed = indexed.substring(0, slash);
+        }
+        long[] range = pointers.get(indexed);
+        try (InputStream in = new LazyDocument.BufferInputStream(content.slice((int) range[0], (int) range[1]))) {
+            JsonNode node = mapper.readTree(in);
+            if (indexed.length() == pointer.length()) {
+                return node;
+            }
+            JsonNode part = node.at(pointer.substring(indexed.length()));
+            return part.isMissingNode() ? null : part;
+        } catch (IOException e) {
+            throw new BundlerException("Unable to parse " + indexed + " at byte " + range[0], e);
+        }
+    }
+
+    /**
+     * Tells whether a pointer is that of an indexed entry: a path item, or a component of any section.
+     */
+    static boolean isEntry(String pointer) {
+
+        int slash = pointer.lastIndexOf('/');
+        String parent = slash < 0 ? "" : pointer.substring(0, slash);
+        return "#/paths".equals(parent) || parent.startsWith("#/components/") && parent.indexOf('/', 13) < 0;
+    }
+
+    /**
+     * Tells whether indexed entries may be found below a pointer.
+     */
+    static boolean isAbove(String pointer) {
+
+        return "#".equals(pointer) || "#/paths".equals(pointer) || "#/components".equals(pointer)
+               || pointer.startsWith("#/components/") && pointer.indexOf('/', 13) < 0;
+    }
+
+    static String child(String pointer, Object key) {
+
+        return pointer + "/" + String.valueOf(key).replace("~", "~0").replace("/", "~1");
+    }
+
+    /**
+     * Counts and hashes the bytes written to a JSON output and records the range of each indexed entry, while the
+     * bundle is written.
+     */
+    static class Recorder extends FilterOutputStream {
+
+        private final String file;
+        private final Map<String, Object> pointers = new LinkedHashMap<>();
+        private final MessageDigest digest = BundleCache.newDigest();
+        private JsonGenerator generator;
+        private long written;
+
+        Recorder(OutputStream out, String file) {
+
+            super(out);
+            this.file = file;
+        }
+
+        void setGenerator(JsonGenerator generator) {
+
+            this.generator = generator;
+        }
+
+        /**
+         * @return the number of bytes written so far, those buffered by the generator included
+         */
+        long position() {
+
+            return written + generator.getOutputBuffered();
+        }
+
+        void add(String pointer, long start) {
+
+            pointers.put(pointer, new long[] {start, position() - start});
+        }
+
+        /**
+         * Writes the index, once the output is complete.
+         */
+        void writeIndex(OutputStream index) throws IOException {
+
+            Map<String, Object> record = new LinkedHashMap<>();
+            record.put(FILE, file);
+            record.put(SIZE, written);
+            record.put(DIGEST, BundleCache.hex(digest));
+            record.put(POINTERS, pointers);
+            mapper.writeValue(index, record);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+
+            out.write(b);
+            digest.update((byte) b);
+            written++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+
+            out.write(b, off, len);
+            digest.update(b, off, len);
+            written += len;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.networknt.openapi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A part of a spec bundled on its own, e.g. for a service that serves a few of its operations: the operations
+ * having one of the tags, under one of the path prefixes, or with one of the operation ids, and the components they
+ * reference. A slice is written next to the full bundle, as <code>&lt;outputFile&gt;.&lt;name&gt;.&lt;ext&gt;</code>.
+ */
+public class BundleSlice {
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9._-]+");
+
+    // parts of the output file names of the formats, a slice named min would be written over the minified bundle
+    private static final Set<String> RESERVED = new HashSet<>(Arrays.asList("min", "json", "yaml", "yml", "smile",
+                                                                            "cbor", "idx"));
+
+    private final String name;
+    private Set<String> tags = new LinkedHashSet<>();
+    private List<String> pathPrefixes = new ArrayList<>();
+    private Set<String> operationIds = new LinkedHashSet<>();
+
+    /**
+     * @param name the name of the slice, part of its file names: letters, digits, dots, dashes and underscores. Its
+     * dot separated parts cannot be one of the format extensions: min, json, yaml, yml, smile, cbor or idx
+     */
+    public BundleSlice(String name) {
+
+        if (!NAME.matcher(name).matches()) {
+            throw new BundlerException("Invalid slice name " + name + ", expected letters, digits, '.', '-' or '_'");
+        }
+        for (String part : name.split("\\.")) {
+            if (RESERVED.contains(part)) {
+                throw new BundlerException("Invalid slice name " + name + ", " + part
+                                                   + " is an extension of the output files");
+            }
+        }
+        this.name = name;
+    }
+
+    /**
+     * @return a slice named after the tag, with the operations having it. A tag that is a format extension, e.g.
+     * <code>min</code>, gives the name <code>min_</code>
+     */
+    public static BundleSlice byTag(String tag) {
+
+        BundleSlice slice = new BundleSlice(name(tag));
+        slice.getTags().add(tag);
+        return slice;
+    }
+
+    /**
+     * @return a slice named after the path prefix, e.g. <code>pets_v1</code> for <code>/pets/v1</code>, with the
+     * operations of the paths under it
+     */
+    public static BundleSlice byPathPrefix(String pathPrefix) {
+
+        BundleSlice slice = new BundleSlice(name(pathPrefix));
+        slice.getPathPrefixes().add(pathPrefix);
+        return slice;
+    }
+
+    /**
+     * @return a slice named after the operation id, with this operation only
+     */
+    public static BundleSlice byOperationId(String operationId) {
+
+        BundleSlice slice = new BundleSlice(name(operationId));
+        slice.getOperationIds().add(operationId);
+        return slice;
+    }
+
+    public String getName() {
+
+        return name;
+    }
+
+    public Set<String> getTags() {
+
+        return tags;
+    }
+
+    public void setTags(Collection<String> tags) {
+
+        this.tags = new LinkedHashSet<>(tags);
+    }
+
+    public List<String> getPathPrefixes() {
+
+        return pathPrefixes;
+    }
+
+    /**
+     * @param pathPrefixes prefixes of the paths, matched by whole segments: <code>/pets</code> selects
+     * <code>/pets/{id}</code> but not <code>/petstore</code>
+     */
+    public void setPathPrefixes(Collection<String> pathPrefixes) {
+
+        this.pathPrefixes = new ArrayList<>(pathPrefixes);
+    }
+
+    public Set<String> getOperationIds() {
+
+        return operationIds;
+    }
+
+    public void setOperationIds(Collection<String> operationIds) {
+
+        this.operationIds = new LinkedHashSet<>(operationIds);
+    }
+
+    /**
+     * @param path the path of the operation, null for a webhook
+     * @param operation the operation
+     * @return true if the operation belongs to the slice
+     */
+    boolean matches(String path, Map<String, Object> operation) {
+
+        if (operationIds.contains(operation.get("operationId"))) {
+            return true;
+        }
+        if (operation.get("tags") instanceof Collection) {
+            for (Object tag : (Collection<?>) operation.get("tags")) {
+                if (tags.contains(tag)) {
+                    return true;
+                }
+            }
+        }
+        if (path != null) {
+            for (String prefix : pathPrefixes) {
+                if (path.startsWith(prefix) && (path.length() == prefix.length() || prefix.endsWith("/")
+                                                || path.charAt(prefix.length()) == '/')) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String name(String criterion) {
+
+        String name = criterion.replaceAll("^/+", "").replaceAll("[^A-Za-z0-9._-]+", "_");
+        List<String> parts = new ArrayList<>();
+        for (String part : name.split("\\.", -1)) {
+            parts.add(RESERVED.contains(part) ? part + "_" : part);
+        }
+        return name.isEmpty() ? "root" : String.join(".", parts);
+    }
+
+    @Override
+    public String toString() {
+
+        return name + "(tags=" + tags + ",paths=" + pathPrefixes + ",operations=" + operationIds + ")";
+    }
+}
@@ -0,0 +1,160 @@
+package com.networknt.openapi;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches a spec and every file it references, and bundles it again whenever one of them is changed, created or
+ * deleted. Parsed files are kept in a {@link ReferenceCache} between rebuilds; only the files that changed are
+ * parsed again.
+ */
+public class BundleWatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BundleWatcher.class);
+
+    private final Supplier<BundlerProcessor> processors;
+    private final ReferenceCache referenceCache = new ReferenceCache();
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+
+    private long debounceMillis = 200;
+    private Set<Path> dependencies = Collections.emptySet();
+    private volatile boolean failing;
+
+    /**
+     * @param processors creates a configured processor for each rebuild. Incremental mode must not be enabled, as
+     *                   the watcher needs the dependencies of every build
+     */
+    public BundleWatcher(Supplier<BundlerProcessor> processors) {
+
+        this.processors = processors;
+    }
+
+    /**
+     * Bundles once, then watches for changes until the thread is interrupted.
+     *
+     * @throws IOException if the directories cannot be watched
+     * @throws InterruptedException when interrupted, which is the regular way to stop watching
+     */
+    public void watch() throws IOException, InterruptedException {
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            Set<Path> changed = rebuild(Collections.emptySet(), watchService);
+            while (true) {
+                WatchKey key = changed.isEmpty() ? watchService.take() : watchService.poll();
+                // editors save in bursts, wait until the directories are quiet
+                while (key != null) {
+                    collect(key, changed);
+                    key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+                }
+                // until a build found the dependencies, any change in the watched directories may fix it
+                if (!dependencies.isEmpty()) {
+                    changed.retainAll(dependencies);
+                }
+                changed = changed.isEmpty() ? changed : rebuild(changed, watchService);
+            }
+        } finally {
+            watchedDirs.clear();
+        }
+    }
+
+    private void collect(WatchKey key, Set<Path> changed) {
+
+        Path dir = watchedDirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (dir != null && event.kind() != StandardWatchEventKinds.OVERFLOW) {
+                changed.add(dir.resolve((Path) event.context()));
+            } else if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // events were lost, assume everything changed
+                changed.addAll(dependencies);
+            }
+        }
+        if (!key.reset()) {
+            watchedDirs.remove(key);
+        }
+    }
+
+    /**
+     * Bundles again and watches the directory of the spec, and those of all files the new bundle depends on.
+     *
+     * @return the files that changed while bundling, before their directories were watched
+     */
+    private Set<Path> rebuild(Set<Path> changed, WatchService watchService) throws IOException {
+
+        long start = System.nanoTime();
+        FileTime startTime = FileTime.fromMillis(System.currentTimeMillis());
+        changed.forEach(referenceCache::invalidate);
+        BundlerProcessor processor = processors.get();
+        processor.setReferenceCache(referenceCache);
+        // watched before bundling, so that fixing a spec that never bundled is noticed
+        register(processor.getSpec().toAbsolutePath().normalize().getParent(), watchService);
+        Set<Path> deps = new LinkedHashSet<>();
+        try {
+            processor.call();
+            failing = false;
+            LOG.info("OpenAPI Bundler: Bundled in {} ms{}",
+                             (System.nanoTime() - start) / 1_000_000,
+                             changed.isEmpty() ? "" : " after change of " + changed);
+        } catch (Exception e) {
+            // keep watching the previous set of files and those found until the failure, the next save usually fixes it
+            LOG.error("OpenAPI Bundler: Bundling failed after change of {}", changed, e);
+            failing = true;
+            deps.addAll(dependencies);
+        }
+        processor.getDependencies().forEach(p -> deps.add(p.toAbsolutePath().normalize()));
+        dependencies = deps;
+        for (Path p : deps) {
+            register(p.getParent(), watchService);
+        }
+
+        Set<Path> missed = new LinkedHashSet<>();
+        for (Path p : deps) {
+            if (Files.exists(p) && Files.getLastModifiedTime(p).compareTo(startTime) >= 0) {
+                missed.add(p);
+            }
+        }
+        return missed;
+    }
+
+    private void register(Path dir, WatchService watchService) throws IOException {
+
+        // a missing reference may point to a directory that does not exist yet
+        if (!watchedDirs.containsValue(dir) && Files.isDirectory(dir)) {
+            // deleted files, e.g. by editors saving through a rename, must not be served from the cache
+            watchedDirs.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                         StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), dir);
+        }
+    }
+
+    /**
+     * @return true if the last build failed with an error, e.g. a missing reference; its outputs are then those of the
+     * last successful build
+     */
+    public boolean isFailing() {
+
+        return failing;
+    }
+
+    /**
+     * @param debounceMillis how long the directories must be quiet before a rebuild starts. Default: 200
+     */
+    public void setDebounceMillis(long debounceMillis) {
+
+        this.debounceMillis = debounceMillis;
+    }
+}
@@ -3,7 +3,15 @@ package com.networknt.openapi;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,7 +24,7 @@ public class Bundler {
 
     private static final Logger LOG = LoggerFactory.getLogger(Bundler.class);
 
-    @Parameter(description = "operation: The operation to be performed. Supported operations: bundle | validate. Must be specified")
+    @Parameter(description = "operation: The operation to be performed. Supported operations: bundle | validate | batch | watch | serve | graph | affected. Must be specified")
     String operation;
 
     @Parameter(names = {"--dir", "-d"},
@@ -29,17 +37,125 @@ public class Bundler {
     String file;
 
     @Parameter(names = {"--outputFormat", "-o"},
-               description = "The output format for the bundled file: YAML | JSON | both. Default: YAML")
+               description = "The output formats for the bundled file, comma separated: YAML | JSON | both | minjson | smile | cbor. Default: YAML")
     String output = "yaml";
 
     @Parameter(names = {"--outputFile", "-of"},
-               description = "The name of the bundled and validated OpenAPI file. Default: openapi.bundled")
-    String outputFile = "openapi.bundled";
+               description = "The name of the bundled and validated OpenAPI file. Default: openapi.bundled, and <spec name>.bundled in batch")
+    String outputFile;
 
     @Parameter(names = {"--outputDir", "-od"},
                description = "The output directory of the bundled and validated file. Default: same as input directory specified in <dir>")
     String outputDir;
 
+    @Parameter(names = {"--specs", "-s"},
+               description = "batch only: glob pattern, relative to <dir>, of the YAML files to be bundled. Default: **/openapi.yaml")
+    String specs = "**/openapi.yaml";
+
+    @Parameter(names = {"--manifest", "-m"},
+               description = "batch only: file listing the YAML files to be bundled, one per line relative to <dir>. Overrides <specs>")
+    String manifest;
+
+    @Parameter(names = {"--threads", "-t"},
+               description = "batch only: number of specifications bundled concurrently. Default: number of processors")
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = {"--parallel", "-p"},
+               description = "Parse all referenced files in parallel before resolving references. Default: false")
+    boolean parallel = false;
+
+    @Parameter(names = {"--incremental", "-i"},
+               description = "Skip bundling when neither the file nor its references changed since the last run. Default: false")
+    boolean incremental = false;
+
+    @Parameter(names = {"--dedup"},
+               description = "Merge structurally identical schemas and report different schemas sharing a name. Default: false")
+    boolean dedup = false;
+
+    @Parameter(names = {"--prune"},
+               description = "Remove components that are not reachable from the paths, webhooks or security schemes. Default: false")
+    boolean prune = false;
+
+    @Parameter(names = {"--failOnAmbiguousRefs"},
+               description = "Fail when a local reference of a referenced file, e.g. #/Common, is defined in several loaded files instead of using the first one. Default: false")
+    boolean failOnAmbiguousRefs = false;
+
+    @Parameter(names = {"--index"},
+               description = "Write a sidecar index <output>.idx next to the JSON outputs with the byte range of each path item and component, read by BundleIndex. Default: false")
+    boolean index = false;
+
+    @Parameter(names = {"--canonical"},
+               description = "Sort the components by name, so that unchanged specs give byte for byte identical outputs. Default: false")
+    boolean canonical = false;
+
+    @Parameter(names = {"--sliceByTag"},
+               description = "Also write a bundle per tag, comma separated, with the operations having the tag and the components they reference, as <outputFile>.<tag>.<ext>")
+    List<String> sliceByTag = new ArrayList<>();
+
+    @Parameter(names = {"--sliceByPath"},
+               description = "Also write a bundle per path prefix, comma separated, e.g. /pets, as <outputFile>.pets.<ext>")
+    List<String> sliceByPath = new ArrayList<>();
+
+    @Parameter(names = {"--sliceByOperation"},
+               description = "Also write a bundle per operationId, comma separated, as <outputFile>.<operationId>.<ext>")
+    List<String> sliceByOperation = new ArrayList<>();
+
+    @Parameter(names = {"--maxFiles"},
+               description = "Fail when a spec reads more files than this, the spec included. Default: no limit")
+    int maxFiles = Integer.MAX_VALUE;
+
+    @Parameter(names = {"--maxBytes"},
+               description = "Fail when the files read for a spec exceed this total size in bytes. Default: no limit")
+    long maxBytes = Long.MAX_VALUE;
+
+    @Parameter(names = {"--maxRefDepth"},
+               description = "Fail when more reference files than this are nested. Default: no limit")
+    int maxRefDepth = Integer.MAX_VALUE;
+
+    @Parameter(names = {"--maxDepth"},
+               description = "Fail when maps are nested deeper than this in the bundled spec. Default: no limit")
+    int maxDepth = Integer.MAX_VALUE;
+
+    @Parameter(names = {"--maxNodes"},
+               description = "Fail when the bundled spec has more nodes than this once YAML aliases are expanded. Default: no limit")
+    long maxNodes = Long.MAX_VALUE;
+
+    @Parameter(names = {"--timeout"},
+               description = "Fail when loading and resolving a spec takes longer than this many seconds. Default: no limit")
+    long timeout;
+
+    @Parameter(names = {"--cacheDir"},
+               description = "Cache directory of the files referenced by http(s) URLs, kept across runs. Default: <user home>/.openapi-bundler/cache")
+    String cacheDir = Paths.get(System.getProperty("user.home"), ".openapi-bundler", "cache").toString();
+
+    @Parameter(names = {"--cacheMaxAge"},
+               description = "Use files cached less than this many seconds ago without revalidating them with their server. Default: 0, revalidated on each run")
+    long cacheMaxAge;
+
+    @Parameter(names = {"--graphFormat"},
+               description = "graph only: format of the dependency graph printed to standard output: json | dot. Default: json")
+    String graphFormat = "json";
+
+    @Parameter(names = {"--graphLevel"},
+               description = "graph only: edges of the DOT graph, between files or between referenced entries: files | entries. Default: files")
+    String graphLevel = "files";
+
+    @Parameter(names = {"--changed", "-c"},
+               description = "affected only: changed files, comma separated, relative to <dir>")
+    List<String> changed = new ArrayList<>();
+
+    @Parameter(names = {"--port"},
+               description = "serve only: local port the HTTP server listens on. Default: 8080")
+    int port = 8080;
+
+    @Parameter(names = {"--allowRemote"},
+               description = "serve only: also resolve classpath: and http(s): references, which lets any client make the server read classpath resources and fetch URLs. Default: false, local files only")
+    boolean allowRemote = false;
+
+    @Parameter(names = {"--metrics"},
+               description = "Report phase timings and counters of each bundling: summary | json. JSON is printed to standard output, one object per line")
+    String metrics;
+
     @Parameter(names = "-debug",
                description = "Debug mode")
     private static boolean debug = false;
@@ -50,26 +166,40 @@ public class Bundler {
 
     public static void main(String... argv) {
 
+        Bundler bundler = new Bundler();
+        JCommander jCommander = JCommander.newBuilder().addObject(bundler).build();
         try {
             //parse the incoming arguments
             // supported operation:
             // - bundle
             // - validate
-            Bundler bundler = new Bundler();
-            JCommander jCommander = JCommander.newBuilder().addObject(bundler).build();
+            // - batch
+            // - watch
+            // - serve
+            // - graph
+            // - affected
             jCommander.parse(argv);
-            bundler.run(jCommander);
+            if (!bundler.run(jCommander)) {
+                System.exit(1);
+            }
         } catch (ParameterException e) {
             System.out.println("Error while parsing command-line parameters: " + e.getLocalizedMessage());
-            e.usage();
+            jCommander.usage();
+            System.exit(1);
         }
     }
 
-    public void run(JCommander jCommander) {
+    /**
+     * @return false when the operation failed for some specifications, true otherwise
+     */
+    public boolean run(JCommander jCommander) {
         // check if help must be displayed
         if (help) {
             jCommander.usage();
-            return;
+            return true;
+        }
+        if (metrics != null && !metrics.equalsIgnoreCase("summary") && !metrics.equalsIgnoreCase("json")) {
+            throw new ParameterException("Unsupported metrics format " + metrics + ", expected summary | json");
         }
 
         // first mandatory argument is the folder where the YAML files to be bundled are to be found
@@ -90,7 +220,24 @@ public class Bundler {
             BundlerProcessor.validateSpecification(Paths.get(
                     dir,
                     fileName));
-            return;
+            return true;
+        }
+
+        if (operation.equalsIgnoreCase("batch")) {
+            return batch();
+        }
+
+        if (operation.equalsIgnoreCase("serve")) {
+            serve();
+            return true;
+        }
+
+        if (operation.equalsIgnoreCase("affected") && (changed == null || changed.isEmpty())) {
+            throw new ParameterException("Operation affected requires the changed files, see --changed");
+        }
+
+        if (operation.equalsIgnoreCase("graph") || operation.equalsIgnoreCase("affected")) {
+            return graph();
         }
 
         // set output directory.
@@ -104,10 +251,14 @@ public class Bundler {
                          fileName,
                          folder);
 
+        if (operation.equalsIgnoreCase("watch")) {
+            watch(folder, fileName);
+            return true;
+        }
+
         try {
-            BundlerProcessor processor = new BundlerProcessor(folder, fileName, outputDir, outputFile);
-            processor.setOutputJSON(outFormatEquals("json"));
-            processor.setOutputYaml(outFormatEquals("yaml"));
+            BundlerProcessor processor = newProcessor(folder, fileName);
+            processor.setIncremental(incremental);
             processor.call();
         } catch (Exception e) {
             LOG.error("Exception occurred", e);
@@ -118,11 +269,209 @@ public class Bundler {
         LOG.info("OpenAPI Bundler: Bundling API definition has completed. Output directory <{}>, in file format {}",
                          dir,
                          output);
+        return true;
+    }
+
+    private BundlerProcessor newProcessor(String folder, String fileName) {
+
+        BundlerProcessor processor = new BundlerProcessor(folder, fileName, outputDir,
+                                                          outputFile == null ? "openapi.bundled" : outputFile);
+        processor.setOutputJSON(outFormatEquals("json"));
+        processor.setOutputYaml(outFormatEquals("yaml"));
+        processor.setOutputMinifiedJSON(outFormatEquals("minjson"));
+        processor.setOutputSmile(outFormatEquals("smile"));
+        processor.setOutputCbor(outFormatEquals("cbor"));
+        processor.setOutputIndex(index);
+        processor.setParallelLoading(parallel);
+        processor.setDeduplicate(dedup);
+        processor.setPrune(prune);
+        processor.setFailOnAmbiguousReferences(failOnAmbiguousRefs);
+        processor.setCanonical(canonical);
+        processor.setSlices(slices());
+        processor.setLimits(limits());
+        processor.setResolvers(resolvers());
+        processor.setMetricsListener(metricsListener());
+        return processor;
+    }
+
+    private BundlerLimits limits() {
+
+        BundlerLimits limits = new BundlerLimits();
+        limits.setMaxFiles(maxFiles);
+        limits.setMaxBytes(maxBytes);
+        limits.setMaxReferenceDepth(maxRefDepth);
+        limits.setMaxNestingDepth(maxDepth);
+        limits.setMaxNodes(maxNodes);
+        if (timeout > 0) {
+            limits.setMaxDuration(Duration.ofSeconds(timeout));
+        }
+        return limits;
+    }
+
+    private List<BundleSlice> slices() {
+
+        List<BundleSlice> slices = new ArrayList<>();
+        sliceByTag.forEach(tag -> slices.add(BundleSlice.byTag(tag)));
+        sliceByPath.forEach(path -> slices.add(BundleSlice.byPathPrefix(path)));
+        sliceByOperation.forEach(operationId -> slices.add(BundleSlice.byOperationId(operationId)));
+        return slices;
+    }
+
+    private List<ReferenceResolver> resolvers() {
+
+        HttpResolver http = new HttpResolver(Paths.get(cacheDir));
+        http.setMaxAge(Duration.ofSeconds(cacheMaxAge));
+        http.setMaxBytes(maxBytes);
+        return Arrays.asList(new FileResolver(), new ClasspathResolver(), http);
+    }
+
+    private MetricsListener metricsListener() {
+
+        if (metrics == null) {
+            return null;
+        }
+        if (metrics.equalsIgnoreCase("json")) {
+            return m -> System.out.println(BundlerCodec.getDefault().toTree(m.toMap()));
+        }
+        return m -> LOG.info("OpenAPI Bundler: {}", m);
+    }
+
+    private void watch(String folder, String fileName) {
+
+        try {
+            LOG.info("OpenAPI Bundler: Watching API definition <{}> and its references, press Ctrl+C to stop", fileName);
+            new BundleWatcher(() -> newProcessor(folder, fileName)).watch();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOG.error("Exception occurred", e);
+        }
+    }
+
+    /**
+     * @return false when the graph could not be built
+     */
+    private boolean graph() {
+
+        try {
+            Path base = Paths.get(dir);
+            List<Path> files = manifest == null ? BatchBundler.findSpecs(base, specs)
+                                                : BatchBundler.readManifest(base, Paths.get(manifest));
+            BatchBundler batch = new BatchBundler(base, files);
+            batch.setThreads(threads);
+            batch.setParallelLoading(parallel);
+            batch.setLimits(limits());
+            batch.setResolvers(resolvers());
+            DependencyGraph graph = batch.graph();
+
+            if (operation.equalsIgnoreCase("affected")) {
+                List<Path> paths = new ArrayList<>();
+                changed.forEach(c -> paths.add(base.resolve(c)));
+                graph.affected(paths).forEach(System.out::println);
+            } else if (graphFormat.equalsIgnoreCase("dot")) {
+                StringBuilder dot = new StringBuilder();
+                graph.writeDot(dot, graphLevel.equalsIgnoreCase("entries"));
+                System.out.print(dot);
+            } else {
+                System.out.println(BundlerCodec.getDefault().toTree(graph.toMap()).toPrettyString());
+            }
+            return true;
+        } catch (Exception e) {
+            LOG.error("Exception occurred", e);
+            return false;
+        }
+    }
+
+    private void serve() {
+
+        try {
+            BundlerEngine engine = new BundlerEngine();
+            engine.setParallelLoading(parallel);
+            engine.setDeduplicate(dedup);
+            engine.setPrune(prune);
+            engine.setFailOnAmbiguousReferences(failOnAmbiguousRefs);
+            engine.setCanonical(canonical);
+            engine.setLimits(limits());
+            // specs sent by clients must not reach the network or the classpath unless asked for
+            engine.setResolvers(allowRemote ? resolvers() : Collections.singletonList(new FileResolver()));
+            BundlerServer server = new BundlerServer(Paths.get(dir), engine);
+            server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        } catch (Exception e) {
+            LOG.error("Exception occurred", e);
+        }
+    }
+
+    /**
+     * @return false when some specifications failed, or none could be bundled
+     */
+    private boolean batch() {
+
+        try {
+            Path base = Paths.get(dir);
+            List<Path> files = manifest == null ? BatchBundler.findSpecs(base, specs)
+                                                : BatchBundler.readManifest(base, Paths.get(manifest));
+            LOG.info("OpenAPI Bundler: Bundling {} API definitions from directory <{}> with {} threads",
+                             files.size(),
+                             dir,
+                             threads);
+
+            BatchBundler batch = new BatchBundler(base, files);
+            if (outputDir != null) {
+                batch.setOutputDir(Paths.get(outputDir));
+            }
+            // each spec is bundled to <spec name>.bundled unless an output file is given
+            if (outputFile != null) {
+                batch.setOutputFile(outputFile);
+            }
+            batch.setOutputJSON(outFormatEquals("json"));
+            batch.setOutputYaml(outFormatEquals("yaml"));
+            batch.setOutputMinifiedJSON(outFormatEquals("minjson"));
+            batch.setOutputSmile(outFormatEquals("smile"));
+            batch.setOutputCbor(outFormatEquals("cbor"));
+            batch.setOutputIndex(index);
+            batch.setThreads(threads);
+            batch.setParallelLoading(parallel);
+            batch.setIncremental(incremental);
+            batch.setDeduplicate(dedup);
+            batch.setPrune(prune);
+            batch.setFailOnAmbiguousReferences(failOnAmbiguousRefs);
+            batch.setCanonical(canonical);
+            batch.setSlices(slices());
+            batch.setLimits(limits());
+            batch.setResolvers(resolvers());
+            batch.setMetricsListener(metricsListener());
+
+            long start = System.nanoTime();
+            List<BatchBundler.Result> results = batch.call();
+            long failed = 0;
+            for (BatchBundler.Result r : results) {
+                if (r.isSuccess()) {
+                    LOG.info("  OK     {} ms  {}", r.getMillis(), r.getSpec());
+                } else {
+                    failed++;
+                    LOG.info("  FAILED {} ms  {}: {}", r.getMillis(), r.getSpec(), r.getError().getMessage());
+                }
+            }
+            LOG.info("OpenAPI Bundler: Bundled {} API definitions in {} ms, {} failed",
+                             results.size(),
+                             (System.nanoTime() - start) / 1_000_000,
+                             failed);
+            return failed == 0;
+        } catch (Exception e) {
+            LOG.error("Exception occurred", e);
+            return false;
+        }
     }
 
     private boolean outFormatEquals(String format) {
-        String oLow = output.toLowerCase();
-        return format.equals(oLow)||"both".equals(oLow);
+        for (String o : output.toLowerCase().split(",")) {
+            String oLow = o.trim();
+            if (format.equals(oLow) || "both".equals(oLow) && (format.equals("yaml") || format.equals("json"))) {
+                return true;
+            }
+        }
+        return false;
     }
 
 }
@@ -0,0 +1,300 @@
+package com.networknt.openapi;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator.Feature;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * Reads and writes OpenAPI documents. A codec is thread-safe and meant to be shared: the Jackson mappers are built
+ * once, and each thread reuses its own SnakeYAML instance, as those cannot be shared between threads.
+ *
+ * JSON files are parsed with the Jackson streaming parser, YAML files with SnakeYAML. Files are read in one go, and
+ * large ones are memory-mapped rather than copied to the heap.
+ */
+public class BundlerCodec {
+
+    /**
+     * Default maximum size of a document, in characters, as in SnakeYAML.
+     */
+    public static final int DEFAULT_MAX_DOCUMENT_SIZE = 3 * 1024 * 1024;
+
+    /**
+     * Default maximum number of aliases for collections in a document, as in SnakeYAML.
+     */
+    public static final int DEFAULT_MAX_ALIASES = 50;
+
+    /**
+     * Default size, in bytes, from which reference files are parsed on demand.
+     */
+    public static final long DEFAULT_ON_DEMAND_SIZE = 1024 * 1024;
+
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private static final BundlerCodec DEFAULT = new BundlerCodec();
+
+    private final int maxDocumentSize;
+    private final int maxAliases;
+    private final long onDemandSize;
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper yamlMapper = new ObjectMapper(yamlFactory());
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+    private final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+    private final ThreadLocal<Yaml> yaml = ThreadLocal.withInitial(this::newYaml);
+
+    public BundlerCodec() {
+
+        this(DEFAULT_MAX_DOCUMENT_SIZE, DEFAULT_MAX_ALIASES);
+    }
+
+    /**
+     * @param maxDocumentSize maximum size of a document read, in characters
+     * @param maxAliases maximum number of aliases for collections in a document read
+     */
+    public BundlerCodec(int maxDocumentSize, int maxAliases) {
+
+        this(maxDocumentSize, maxAliases, DEFAULT_ON_DEMAND_SIZE);
+    }
+
+    /**
+     * @param maxDocumentSize maximum size of a document read, in characters
+     * @param maxAliases maximum number of aliases for collections in a document read
+     * @param onDemandSize size, in bytes, from which the top level entries of a reference file are parsed on first
+     * access rather than up front. The maximum document size still applies to the whole file, so it must be larger
+     * than this for any file to be parsed on demand
+     */
+    public BundlerCodec(int maxDocumentSize, int maxAliases, long onDemandSize) {
+
+        this.maxDocumentSize = maxDocumentSize;
+        this.maxAliases = maxAliases;
+        this.onDemandSize = onDemandSize;
+        StreamReadConstraints constraints = StreamReadConstraints.builder().maxDocumentLength(maxDocumentSize).build();
+        this.jsonMapper = new ObjectMapper(JsonFactory.builder().streamReadConstraints(constraints).build());
+    }
+
+    /**
+     * @return the codec shared by processors that are not given one
+     */
+    public static BundlerCodec getDefault() {
+
+        return DEFAULT;
+    }
+
+    /**
+     * Parses a YAML or JSON file into maps and lists.
+     *
+     * @param file the file
+     * @param <T> generic
+     * @return the parsed content
+     * @throws IOException if the file cannot be read
+     */
+    public <T> T read(Path file) throws IOException {
+
+        return read(file, null);
+    }
+
+    /**
+     * Parses a YAML or JSON file, updating a digest with the bytes parsed.
+     */
+    <T> T read(Path file, MessageDigest digest) throws IOException {
+
+        ByteBuffer content = content(file, digest);
+        if (isJson(file)) {
+            return BundlerProcessor.castIt(jsonMapper.readValue(new LazyDocument.BufferInputStream(content), Object.class));
+        }
+        return yaml.get().load(new LazyDocument.BufferInputStream(content));
+    }
+
+    /**
+     * Parses a reference file into maps and lists. Files of at least the on demand size are only indexed when their
+     * root is a mapping: each top level entry is parsed on first access, so that a pointer like
+     * <code>models.yaml#/Pet</code> into a large shared file parses only the part it points to.
+     *
+     * @param file the file
+     * @param <T> generic
+     * @return the parsed content
+     * @throws IOException if the file cannot be read
+     */
+    public <T> T readReference(Path file) throws IOException {
+
+        return readReference(file, null);
+    }
+
+    /**
+     * Parses a reference file, updating a digest with the bytes parsed.
+     */
+    <T> T readReference(Path file, MessageDigest digest) throws IOException {
+
+        if (Files.size(file) < onDemandSize) {
+            return read(file, digest);
+        }
+        ByteBuffer content = content(file, digest);
+        LazyDocument document;
+        if (isJson(file)) {
+            document = LazyDocument.json(content, jsonMapper);
+        } else if (hasUtf8Bom(content) || !hasBom(content)) {
+            document = LazyDocument.yaml(StandardCharsets.UTF_8.decode(content.duplicate()).toString(), yaml::get);
+        } else {
+            // UTF-16 is left to SnakeYAML
+            document = null;
+        }
+        return BundlerProcessor.castIt(document != null ? document : read(file, null));
+    }
+
+    /**
+     * @param out the stream to write to, closed with the generator
+     * @return a pretty printing JSON generator
+     * @throws IOException if the generator cannot be created
+     */
+    public JsonGenerator createJsonGenerator(OutputStream out) throws IOException {
+
+        return jsonMapper.getFactory().createGenerator(out, JsonEncoding.UTF8).useDefaultPrettyPrinter();
+    }
+
+    /**
+     * @param out the stream to write to, closed with the generator
+     * @return a JSON generator without any whitespace
+     * @throws IOException if the generator cannot be created
+     */
+    public JsonGenerator createMinifiedJsonGenerator(OutputStream out) throws IOException {
+
+        return jsonMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+    }
+
+    /**
+     * @param out the stream to write to, closed with the generator
+     * @return a Smile generator, the binary JSON format of Jackson
+     * @throws IOException if the generator cannot be created
+     */
+    public JsonGenerator createSmileGenerator(OutputStream out) throws IOException {
+
+        return smileMapper.getFactory().createGenerator(out);
+    }
+
+    /**
+     * @param out the stream to write to, closed with the generator
+     * @return a CBOR generator
+     * @throws IOException if the generator cannot be created
+     */
+    public JsonGenerator createCborGenerator(OutputStream out) throws IOException {
+
+        return cborMapper.getFactory().createGenerator(out);
+    }
+
+    /**
+     * @param out the stream to write to, closed with the generator
+     * @return a YAML generator
+     * @throws IOException if the generator cannot be created
+     */
+    public JsonGenerator createYamlGenerator(OutputStream out) throws IOException {
+
+        return yamlMapper.getFactory().createGenerator(out, JsonEncoding.UTF8).useDefaultPrettyPrinter();
+    }
+
+    /**
+     * Converts parsed content into a Jackson tree, as it would be read back from a written JSON file.
+     *
+     * @param value the parsed content
+     * @return the tree
+     */
+    public JsonNode toTree(Object value) {
+
+        return jsonMapper.valueToTree(value);
+    }
+
+    /**
+     * @return the JSON mapper, for the cache records and indexes the bundler keeps next to the specs
+     */
+    ObjectMapper getJsonMapper() {
+
+        return jsonMapper;
+    }
+
+    public int getMaxDocumentSize() {
+
+        return maxDocumentSize;
+    }
+
+    public int getMaxAliases() {
+
+        return maxAliases;
+    }
+
+    /**
+     * Reads a file in one go: small files into a heap buffer, larger ones memory-mapped. A leading UTF-8 byte order
+     * mark is skipped. The digest, when given, is updated with every byte of the file.
+     */
+    private ByteBuffer content(Path file, MessageDigest digest) throws IOException {
+
+        ByteBuffer content;
+        try (FileChannel channel = FileChannel.open(file)) {
+            long size = channel.size();
+            if (size >= onDemandSize && size > 0) {
+                content = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                content = ByteBuffer.wrap(Files.readAllBytes(file));
+            }
+        }
+        if (digest != null) {
+            digest.update(content.duplicate());
+        }
+        if (hasUtf8Bom(content)) {
+            content.position(UTF8_BOM.length);
+        }
+        return content;
+    }
+
+    private static boolean isJson(Path file) {
+
+        return file.getFileName().toString().toLowerCase().endsWith(".json");
+    }
+
+    private static boolean hasUtf8Bom(ByteBuffer content) {
+
+        return content.remaining() >= 3 && content.get(content.position()) == UTF8_BOM[0]
+               && content.get(content.position() + 1) == UTF8_BOM[1] && content.get(content.position() + 2) == UTF8_BOM[2];
+    }
+
+    private static boolean hasBom(ByteBuffer content) {
+
+        int first = content.remaining() >= 2 ? content.get(content.position()) & 0xff : 0;
+        return first == 0xFE || first == 0xFF;
+    }
+
+    private Yaml newYaml() {
+
+        LoaderOptions options = new LoaderOptions();
+        options.setCodePointLimit(maxDocumentSize);
+        options.setMaxAliasesForCollections(maxAliases);
+        return new Yaml(options);
+    }
+
+    private static YAMLFactory yamlFactory() {
+
+        YAMLFactory yamlFactory = new YAMLFactory();
+        yamlFactory.enable(Feature.MINIMIZE_QUOTES);
+        yamlFactory.disable(Feature.SPLIT_LINES);
+        yamlFactory.disable(Feature.WRITE_DOC_START_MARKER);
+        yamlFactory.disable(Feature.ALWAYS_QUOTE_NUMBERS_AS_STRINGS);
+        yamlFactory.disable(Feature.LITERAL_BLOCK_STYLE);
+        return yamlFactory;
+    }
+}
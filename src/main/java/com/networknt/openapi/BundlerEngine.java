@@ -0,0 +1,291 @@
+package com.networknt.openapi;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.networknt.oas.validator.ValidationResults;
+import com.networknt.oas.validator.ValidationResults.Severity;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Thread-safe bundler meant to live as long as the application embedding it, e.g. a spec registry bundling every
+ * uploaded spec. Each request is bundled by its own {@link BundlerProcessor}, while parsed shared files are kept in
+ * a bounded {@link ReferenceCache} that parses a file again when its modification time changes.
+ *
+ * The engine is configured before it is first used; {@link #bundle(Path)} can then be called concurrently.
+ */
+public class BundlerEngine {
+
+    /**
+     * Default maximum total size of the files held by the cache of an engine.
+     */
+    public static final long DEFAULT_MAX_CACHED_BYTES = 64L * 1024 * 1024;
+
+    private final ReferenceCache referenceCache;
+
+    private final BundlerCodec codec = BundlerCodec.getDefault();
+
+    private boolean parallelLoading = false;
+
+    private boolean validation = true;
+
+    private boolean deduplicate = false;
+
+    private boolean prune = false;
+    private boolean failOnAmbiguousReferences = false;
+
+    private boolean canonical = false;
+
+    private BundlerLimits limits = new BundlerLimits();
+
+    private List<ReferenceResolver> resolvers = Collections.singletonList(new FileResolver());
+
+    public BundlerEngine() {
+
+        this(DEFAULT_MAX_CACHED_BYTES);
+    }
+
+    /**
+     * @param maxCachedBytes maximum total size of the parsed files kept, the least recently used ones are evicted
+     * beyond it
+     */
+    public BundlerEngine(long maxCachedBytes) {
+
+        this(new ReferenceCache());
+        referenceCache.setMaxBytes(maxCachedBytes);
+        referenceCache.setCheckModified(true);
+    }
+
+    /**
+     * @param referenceCache the cache of parsed files, used as configured
+     */
+    public BundlerEngine(ReferenceCache referenceCache) {
+
+        this.referenceCache = referenceCache;
+    }
+
+    /**
+     * Bundles a spec in memory, resolving all references, and validates it unless validation is disabled.
+     *
+     * @param spec the spec
+     * @return the bundled spec
+     * @throws IOException if the spec or a referenced file cannot be read
+     */
+    public Bundle bundle(Path spec) throws IOException {
+
+        return bundle(spec, null);
+    }
+
+    /**
+     * Bundles a spec whose local files must all be in a directory, e.g. a spec uploaded by a user, see
+     * {@link #bundle(Path)}.
+     *
+     * @param spec the spec
+     * @param rootDir the directory, null for no restriction
+     * @return the bundled spec
+     * @throws java.nio.file.AccessDeniedException if the spec is outside of the directory
+     * @throws IOException if the spec or a referenced file cannot be read
+     * @throws BundlerException if a referenced file is outside of the directory
+     */
+    public Bundle bundle(Path spec, Path rootDir) throws IOException {
+
+        Path p = spec.toAbsolutePath().normalize();
+        BundlerProcessor processor = new BundlerProcessor(p.getParent().toString(), p.getFileName().toString(),
+                                                          p.getParent().toString(), p.getFileName().toString());
+        processor.setCodec(codec);
+        processor.setReferenceCache(referenceCache);
+        processor.setParallelLoading(parallelLoading);
+        processor.setDeduplicate(deduplicate);
+        processor.setPrune(prune);
+        processor.setFailOnAmbiguousReferences(failOnAmbiguousReferences);
+        processor.setCanonical(canonical);
+        processor.setLimits(limits);
+        processor.setResolvers(resolvers);
+        processor.setRootDir(rootDir);
+
+        Map<String, Object> tree = processor.bundle(p);
+        if (validation) {
+            processor.validate(tree, p);
+        }
+        return new Bundle(p, tree, processor, codec);
+    }
+
+    /**
+     * @return the cache of parsed files shared by all bundles
+     */
+    public ReferenceCache getReferenceCache() {
+
+        return referenceCache;
+    }
+
+    /**
+     * @param parallelLoading true to parse the referenced files of a spec in parallel before resolving references
+     */
+    public void setParallelLoading(boolean parallelLoading) {
+
+        this.parallelLoading = parallelLoading;
+    }
+
+    /**
+     * @param deduplicate true to merge structurally identical schemas of a spec
+     */
+    public void setDeduplicate(boolean deduplicate) {
+
+        this.deduplicate = deduplicate;
+    }
+
+    /**
+     * @param prune true to remove components that are not reachable from the paths of a spec
+     */
+    public void setPrune(boolean prune) {
+
+        this.prune = prune;
+    }
+
+    /**
+     * @param failOnAmbiguousReferences true to fail bundling a spec whose local references are defined in several
+     * loaded files
+     */
+    public void setFailOnAmbiguousReferences(boolean failOnAmbiguousReferences) {
+
+        this.failOnAmbiguousReferences = failOnAmbiguousReferences;
+    }
+
+    /**
+     * @param canonical true to sort the components of a spec by name, for byte for byte stable outputs
+     */
+    public void setCanonical(boolean canonical) {
+
+        this.canonical = canonical;
+    }
+
+    public BundlerLimits getLimits() {
+
+        return limits;
+    }
+
+    /**
+     * @param limits budgets bounding the work of each bundling, e.g. of specs uploaded by users
+     */
+    public void setLimits(BundlerLimits limits) {
+
+        this.limits = limits;
+    }
+
+    /**
+     * @param resolvers how references that are not relative paths are resolved, shared by all bundles. Only
+     * <code>file:</code> locations are resolved by default, as references of uploaded specs should not reach the
+     * network or the classpath of the application unless it wants them to
+     */
+    public void setResolvers(List<ReferenceResolver> resolvers) {
+
+        this.resolvers = resolvers;
+    }
+
+    /**
+     * @param validation false to skip validating bundled specs
+     */
+    public void setValidation(boolean validation) {
+
+        this.validation = validation;
+    }
+
+    /**
+     * A bundled spec, held in memory.
+     */
+    public static class Bundle {
+
+        private final Path spec;
+        private final Map<String, Object> tree;
+        private final Set<Path> dependencies;
+        private final ValidationResults validationResults;
+        private final BundlerMetrics metrics;
+        private final BundlerCodec codec;
+
+        Bundle(Path spec, Map<String, Object> tree, BundlerProcessor processor, BundlerCodec codec) {
+
+            this.spec = spec;
+            this.tree = tree;
+            this.dependencies = Collections.unmodifiableSet(new LinkedHashSet<>(processor.getDependencies()));
+            this.validationResults = processor.getValidationResults();
+            this.metrics = processor.getMetrics();
+            this.codec = codec;
+        }
+
+        public Path getSpec() {
+
+            return spec;
+        }
+
+        /**
+         * @return the bundled spec as maps and lists, owned by this bundle
+         */
+        public Map<String, Object> getTree() {
+
+            return tree;
+        }
+
+        /**
+         * @return every file the bundle was built from, the spec first
+         */
+        public Set<Path> getDependencies() {
+
+            return dependencies;
+        }
+
+        /**
+         * @return the result of validating the bundled spec, null if validation is disabled
+         */
+        public ValidationResults getValidationResults() {
+
+            return validationResults;
+        }
+
+        /**
+         * @return true unless validation found errors
+         */
+        public boolean isValid() {
+
+            return validationResults == null || validationResults.getSeverity().lt(Severity.ERROR);
+        }
+
+        public BundlerMetrics getMetrics() {
+
+            return metrics;
+        }
+
+        /**
+         * Writes the bundled spec as pretty printed JSON. The stream is flushed but not closed.
+         *
+         * @param out the stream to write to
+         * @throws IOException if the stream cannot be written
+         */
+        public void writeJson(OutputStream out) throws IOException {
+
+            write(codec.createJsonGenerator(out));
+        }
+
+        /**
+         * Writes the bundled spec as YAML. The stream is flushed but not closed.
+         *
+         * @param out the stream to write to
+         * @throws IOException if the stream cannot be written
+         */
+        public void writeYaml(OutputStream out) throws IOException {
+
+            write(codec.createYamlGenerator(out));
+        }
+
+        private void write(JsonGenerator generator) throws IOException {
+
+            try (JsonGenerator g = generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+                TreeWriter.write(tree, Collections.singletonList(g));
+            }
+        }
+    }
+}
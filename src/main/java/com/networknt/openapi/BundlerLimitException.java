@@ -0,0 +1,12 @@
+package com.networknt.openapi;
+
+/**
+ * Thrown when a bundling exceeds one of its {@link BundlerLimits}.
+ */
+public class BundlerLimitException extends BundlerException {
+
+    public BundlerLimitException(String message) {
+
+        super(message);
+    }
+}
@@ -0,0 +1,100 @@
+package com.networknt.openapi;
+
+import java.time.Duration;
+
+/**
+ * Budgets bounding the work of a single bundling, for services bundling specs they do not trust. A bundling that
+ * exceeds one of them fails with a {@link BundlerLimitException} as soon as it does. Nothing is limited by default.
+ *
+ * YAML aliases are bounded twice: the codec limits the aliases of each file it parses, see
+ * {@link BundlerCodec#getMaxAliases()}, and the number of nodes limits what aliases and repeated inline references
+ * expand to in the bundled spec.
+ */
+public class BundlerLimits {
+
+    private int maxFiles = Integer.MAX_VALUE;
+    private long maxBytes = Long.MAX_VALUE;
+    private int maxReferenceDepth = Integer.MAX_VALUE;
+    private int maxNestingDepth = Integer.MAX_VALUE;
+    private long maxNodes = Long.MAX_VALUE;
+    private Duration maxDuration;
+
+    public int getMaxFiles() {
+
+        return maxFiles;
+    }
+
+    /**
+     * @param maxFiles maximum number of files read, the spec included
+     */
+    public void setMaxFiles(int maxFiles) {
+
+        this.maxFiles = maxFiles;
+    }
+
+    public long getMaxBytes() {
+
+        return maxBytes;
+    }
+
+    /**
+     * @param maxBytes maximum total size of the files read, checked before a file is parsed
+     */
+    public void setMaxBytes(long maxBytes) {
+
+        this.maxBytes = maxBytes;
+    }
+
+    public int getMaxReferenceDepth() {
+
+        return maxReferenceDepth;
+    }
+
+    /**
+     * @param maxReferenceDepth maximum length of a chain of files referencing each other
+     */
+    public void setMaxReferenceDepth(int maxReferenceDepth) {
+
+        this.maxReferenceDepth = maxReferenceDepth;
+    }
+
+    public int getMaxNestingDepth() {
+
+        return maxNestingDepth;
+    }
+
+    /**
+     * @param maxNestingDepth maximum nesting of maps in the bundled spec, across referenced files
+     */
+    public void setMaxNestingDepth(int maxNestingDepth) {
+
+        this.maxNestingDepth = maxNestingDepth;
+    }
+
+    public long getMaxNodes() {
+
+        return maxNodes;
+    }
+
+    /**
+     * @param maxNodes maximum number of maps, lists and values of the bundled spec as it is written, with aliases
+     * and repeated inline references expanded
+     */
+    public void setMaxNodes(long maxNodes) {
+
+        this.maxNodes = maxNodes;
+    }
+
+    public Duration getMaxDuration() {
+
+        return maxDuration;
+    }
+
+    /**
+     * @param maxDuration maximum time spent loading files and resolving references, null for no limit
+     */
+    public void setMaxDuration(Duration maxDuration) {
+
+        this.maxDuration = maxDuration;
+    }
+}
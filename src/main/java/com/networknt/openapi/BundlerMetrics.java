@@ -0,0 +1,173 @@
+package com.networknt.openapi;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measurements of a single bundling: the time spent in each phase and the amount of work done. Loading covers the
+ * parsing of the spec and of every referenced file, resolving covers the walk over the tree that replaces the
+ * references, writing covers all output formats.
+ */
+public class BundlerMetrics {
+
+    private Path spec;
+    private boolean skipped;
+
+    long loadNanos;
+    long resolveNanos;
+    long writeNanos;
+    long validateNanos;
+
+    int files;
+    long bytesRead;
+    int refsResolved;
+    int cacheHits;
+    int maxDepth;
+    int unchangedOutputs;
+
+    void setSpec(Path spec) {
+
+        this.spec = spec;
+    }
+
+    void setSkipped(boolean skipped) {
+
+        this.skipped = skipped;
+    }
+
+    /**
+     * @return the bundled spec
+     */
+    public Path getSpec() {
+
+        return spec;
+    }
+
+    /**
+     * @return true if the spec was not bundled in incremental mode, as nothing changed since the last run
+     */
+    public boolean isSkipped() {
+
+        return skipped;
+    }
+
+    public double getLoadMillis() {
+
+        return millis(loadNanos);
+    }
+
+    public double getResolveMillis() {
+
+        return millis(resolveNanos);
+    }
+
+    public double getWriteMillis() {
+
+        return millis(writeNanos);
+    }
+
+    public double getValidateMillis() {
+
+        return millis(validateNanos);
+    }
+
+    public double getTotalMillis() {
+
+        return millis(loadNanos + resolveNanos + writeNanos + validateNanos);
+    }
+
+    /**
+     * @return the number of files parsed for the bundle, the spec included
+     */
+    public int getFiles() {
+
+        return files;
+    }
+
+    /**
+     * @return the total size of the files parsed for the bundle
+     */
+    public long getBytesRead() {
+
+        return bytesRead;
+    }
+
+    /**
+     * @return the number of <code>$ref</code> and discriminator mapping values resolved
+     */
+    public int getRefsResolved() {
+
+        return refsResolved;
+    }
+
+    /**
+     * @return the number of references to a file that was already loaded for this bundle
+     */
+    public int getCacheHits() {
+
+        return cacheHits;
+    }
+
+    /**
+     * @return the deepest nesting of objects walked while resolving references
+     */
+    public int getMaxDepth() {
+
+        return maxDepth;
+    }
+
+    /**
+     * @return number of outputs already holding the bundled content, which were left untouched
+     */
+    public int getUnchangedOutputs() {
+
+        return unchangedOutputs;
+    }
+
+    /**
+     * @return the metrics as a map of plain values, in a stable order, to be written as JSON
+     */
+    public Map<String, Object> toMap() {
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("spec", String.valueOf(spec));
+        map.put("skipped", skipped);
+        map.put("loadMillis", getLoadMillis());
+        map.put("resolveMillis", getResolveMillis());
+        map.put("writeMillis", getWriteMillis());
+        map.put("validateMillis", getValidateMillis());
+        map.put("totalMillis", getTotalMillis());
+        map.put("files", files);
+        map.put("bytesRead", bytesRead);
+        map.put("refsResolved", refsResolved);
+        map.put("cacheHits", cacheHits);
+        map.put("maxDepth", maxDepth);
+        map.put("unchangedOutputs", unchangedOutputs);
+        return map;
+    }
+
+    @Override
+    public String toString() {
+
+        return String.format("%s: load %.1f ms, resolve %.1f ms, write %.1f ms, validate %.1f ms; "
+                                     + "%d files, %d bytes read, %d references resolved, %d cache hits, max depth %d, "
+                                     + "%d unchanged outputs",
+                             spec,
+                             getLoadMillis(),
+                             getResolveMillis(),
+                             getWriteMillis(),
+                             getValidateMillis(),
+                             files,
+                             bytesRead,
+                             refsResolved,
+                             cacheHits,
+                             maxDepth,
+                             unchangedOutputs);
+    }
+
+    private static double millis(long nanos) {
+
+        return nanos / 1_000_000.0;
+    }
+}
@@ -1,26 +1,45 @@
 package com.networknt.openapi;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
-import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator.Feature;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.networknt.oas.OpenApiParser;
 import com.networknt.oas.model.OpenApi3;
+import com.networknt.oas.validator.ValidationResults;
+import com.networknt.oas.validator.ValidationResults.Severity;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.yaml.snakeyaml.Yaml;
 
 
 /**
@@ -30,15 +49,19 @@ import org.yaml.snakeyaml.Yaml;
 public class BundlerProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(BundlerProcessor.class);
-    private static final String RESOLVING_FLAG = "BUNDLER_MAP_FLAG";
     private static final String EXT_REF = "BUNDLER_EXT_REF";
     private static final String JSON_EXT = "json";
+    private static final String MIN_JSON_EXT = "min.json";
+    private static final String SMILE_EXT = "smile";
+    private static final String CBOR_EXT = "cbor";
     private static final Pattern FILE_EXTS = Pattern.compile("(.*)\\.(json|ya?ml)");
     private static final String DISCRIMINATOR = "discriminator";
     private static final String ONE_OF = "oneOf";
     private static final String REF = "$ref";
+    private static final String CACHE_SUFFIX = ".bundler-cache";
+    // a scheme of at least two characters, so that Windows drive letters are paths
+    private static final Pattern LOCATION = Pattern.compile("[a-zA-Z][a-zA-Z0-9+.-]+:.*");
 
-    private static final ObjectMapper mapper = new ObjectMapper();
 
     Map<String, Map<String, Object>> references = new HashMap<>();
 
@@ -46,19 +69,108 @@ public class BundlerProcessor {
     // concurrent modification exception while iterating the map and updating components.
     final Map<String, Object> definitions = new HashMap<>();
 
+    // top level keys of the loaded files, to resolve local references in their content
+    private final SymbolIndex symbols = new SymbolIndex();
+
     // stack to maintain relative location state
     private final Deque<Path> workingDirs = new LinkedList<>();
 
+    // stack of the reference files being resolved, local references are looked up in the top one first
+    private final Deque<Path> workingFiles = new LinkedList<>();
+
+    // locations of the reference files being resolved, relative references of files that are not local are
+    // resolved against the top one
+    private final Deque<URI> workingLocations = new LinkedList<>();
+
+    // every file the bundle is built from, the spec first
+    private final Set<Path> dependencies = new LinkedHashSet<>();
+    // content hashes of the dependencies as parsed, for incremental runs
+    private final Map<Path, String> digests = new LinkedHashMap<>();
+
     private final String folder;
     private final String fileName;
     private final String outputDir;
     private String outputFile;
 
+    private BundlerCodec codec = BundlerCodec.getDefault();
+
     private boolean outputYaml = true;
     private boolean outputJSON = false;
+    private boolean outputMinifiedJSON = false;
+    private boolean outputSmile = false;
+    private boolean outputCbor = false;
+    private boolean outputIndex = false;
 
     private String yamlExt = "yaml";
 
+    // optional cache of parsed reference files shared with other processors
+    private ReferenceCache referenceCache;
+
+    private boolean parallelLoading = false;
+
+    private boolean incremental = false;
+
+    private boolean deduplicate = false;
+
+    // records schemas and references to merge identical schemas, when deduplicating
+    private Deduplicator deduplicator;
+
+    private boolean prune = false;
+
+    private boolean failOnAmbiguousReferences = false;
+
+    private boolean canonical = false;
+
+    private List<BundleSlice> slices = Collections.emptyList();
+
+    // results of validating each slice, by name
+    private final Map<String, ValidationResults> sliceValidationResults = new LinkedHashMap<>();
+
+    private List<String> removedComponents = Collections.emptyList();
+
+    private BundlerLimits limits = new BundlerLimits();
+
+    private List<ReferenceResolver> resolvers = Collections.singletonList(new FileResolver());
+
+    // directory local files must be in, when given
+    private Path rootDir;
+
+    // true once a file that is not local was referenced, its changes cannot be detected by incremental runs
+    private boolean remote;
+
+    // records the references between files and entries, when given
+    private DependencyGraph graph;
+
+    // entries whose content is being walked, the innermost first, when recording the graph
+    private final Deque<String> graphNodes = new ArrayDeque<>();
+
+    // start of the bundling, for the time limit
+    private long started;
+
+    // steps of the walk since the time limit was last checked
+    private int steps;
+
+    private ValidationResults validationResults;
+
+    private final BundlerMetrics metrics = new BundlerMetrics();
+
+    private MetricsListener metricsListener;
+
+    // files found by the resolvers in this run, by location
+    private final Map<URI, Path> locations = new HashMap<>();
+
+    // maps and lists already walked by the resolver, so that shared and recursive nodes are walked once
+    private final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // pending work of the resolver, the innermost node first
+    private final Deque<Frame> frames = new ArrayDeque<>();
+
+    // nesting of the map being resolved
+    private int depth;
+
+    // maps and lists walked by the resolver -> their number of nodes with aliases expanded, only with a node limit
+    private final Map<Object, Long> nodeCounts = new IdentityHashMap<>();
+
     public BundlerProcessor(String folder, String fileName, String outputDir, String outputFile) {
 
         this.folder = folder;
@@ -77,16 +189,106 @@ public class BundlerProcessor {
 
     /**
      * Main processing method. It is expected that this method be called only once. Repeated invocations result in
-     * unspecified behavior.
+     * unspecified behavior; use a {@link BundlerEngine} to bundle many specs with warm caches.
      *
      * @throws IOException if errors occur finding, reading, or writing files/folders
      */
     public void call() throws IOException {
 
-        Path spec = Paths.get(folder, fileName).normalize();
+        Path spec = getSpec();
+
+        Matcher m = FILE_EXTS.matcher(outputFile);
+        if (m.matches()) {
+            outputFile = m.group(1);
+            String ext = m.group(2);
+            if (!JSON_EXT.equals(ext)) {
+                yamlExt = ext;
+            }
+        }
+
+        BundleCache cache = null;
+        if (incremental) {
+            cache = new BundleCache(Paths.get(outputDir, outputFile + CACHE_SUFFIX));
+            if (cache.isUpToDate(options(), outputPaths())) {
+                LOG.info("OpenAPI Bundler: <{}> and its references are unchanged, skipping", spec);
+                // only valid bundles are recorded
+                validationResults = new ValidationResults();
+                metrics.setSpec(spec);
+                metrics.setSkipped(true);
+                report();
+                return;
+            }
+        }
+
+        Map<String, Object> map = bundle(spec);
+        Map<String, Map<String, Object>> sliced = new LinkedHashMap<>();
+        for (BundleSlice slice : slices) {
+            sliced.put(slice.getName(), TreeShaker.slice(map, slice));
+        }
+
+        boolean changed = write(map);
+        for (Map.Entry<String, Map<String, Object>> e : sliced.entrySet()) {
+            changed |= write(e.getValue(), outputPaths(outputFile + "." + e.getKey()));
+        }
+        if (changed || cache == null || !cache.isValidated(options(), outputPaths())) {
+            validate(map, spec);
+            for (Map.Entry<String, Map<String, Object>> e : sliced.entrySet()) {
+                validateSlice(e.getKey(), e.getValue(), spec);
+            }
+        } else {
+            LOG.info("OpenAPI Bundler: bundled <{}> is unchanged, skipping validation", spec);
+            validationResults = new ValidationResults();
+        }
+
+        if (cache != null && isValid()) {
+            if (remote) {
+                LOG.info("OpenAPI Bundler: <{}> references files that are not local, it is bundled on every run", spec);
+            } else {
+                cache.save(options(), outputPaths(), digests);
+            }
+        }
+        report();
+    }
+
+    private void report() {
+
+        LOG.debug("OpenAPI Bundler: {}", metrics);
+        if (metricsListener != null) {
+            metricsListener.bundled(metrics);
+        }
+    }
+
+    /**
+     * Loads the spec and resolves all references, moving referenced objects into components.
+     *
+     * @param spec the spec
+     * @return the bundled spec
+     * @throws IOException if the spec or a referenced file cannot be read
+     */
+    Map<String, Object> bundle(Path spec) throws IOException {
+
+        long start = System.nanoTime();
+        started = start;
+        metrics.setSpec(spec);
+        checkRoot(spec);
         workingDirs.addFirst(spec.getParent());
+        workingLocations.addFirst(spec.toAbsolutePath().normalize().toUri());
+        dependencies.add(spec);
+
+        Map<String, Object> map = read(spec, false);
+        if (graph != null) {
+            graphNodes.addFirst(graph.node(spec, null));
+        }
 
-        Map<String, Object> map = loadYaml(spec);
+        if (parallelLoading) {
+            // parse all external files up front, the resolve pass below is then served from the cache
+            if (referenceCache == null) {
+                referenceCache = new ReferenceCache(codec);
+            }
+            long prefetch = System.nanoTime();
+            referenceCache.prefetch(spec.getParent(), rootDir, map, ForkJoinPool.commonPool());
+            metrics.loadNanos += System.nanoTime() - prefetch;
+        }
 
         Map<String, Object> componentsMap = castIt(map.computeIfAbsent("components",
                 s -> new HashMap<String, Object>()));
@@ -94,84 +296,277 @@ public class BundlerProcessor {
                 s -> new HashMap<String, Object>()));
 
         definitions.putAll(schemasMap);
+        if (deduplicate) {
+            deduplicator = new Deduplicator();
+            schemasMap.forEach((k, v) -> deduplicator.schema(k, v, spec));
+        }
 
         // now let's handle the references.
         resolveMap(map);
+        if (failOnAmbiguousReferences && !symbols.getAmbiguous().isEmpty()) {
+            throw new BundlerException("Local references defined in several files: " + symbols.getAmbiguous());
+        }
 
         // add the resolved components to the main map, before persisting
         schemasMap.putAll(definitions);
 
-        Matcher m = FILE_EXTS.matcher(outputFile);
-        if (m.matches()) {
-            outputFile = m.group(1);
-            String ext = m.group(2);
-            if (!JSON_EXT.equals(ext)) {
-                yamlExt = ext;
+        if (deduplicator != null) {
+            deduplicator.deduplicate(schemasMap);
+        }
+        if (prune) {
+            removedComponents = Collections.unmodifiableList(TreeShaker.prune(map));
+            LOG.info("OpenAPI Bundler: removed {} unreachable components {}", removedComponents.size(), removedComponents);
+        }
+        if (canonical) {
+            sortComponents(map);
+        }
+        if (limits.getMaxNodes() != Long.MAX_VALUE) {
+            checkNodes(map);
+        }
+        if (graph != null) {
+            graph.addSpec(spec, dependencies);
+        }
+
+        metrics.resolveNanos = System.nanoTime() - start - metrics.loadNanos;
+        return map;
+    }
+
+    /**
+     * Parses a file, accounting for it in the load phase. Reference files come from the cache when there is one, and
+     * large ones are parsed on demand.
+     */
+    private <T> T read(Path p, boolean reference) throws IOException {
+
+        long size = Files.size(p);
+        if (metrics.files >= limits.getMaxFiles()) {
+            throw new BundlerLimitException("Limit of " + limits.getMaxFiles() + " files exceeded loading " + p);
+        }
+        if (metrics.bytesRead + size > limits.getMaxBytes()) {
+            throw new BundlerLimitException("Limit of " + limits.getMaxBytes() + " bytes exceeded loading " + p);
+        }
+        checkTime();
+        long start = System.nanoTime();
+        // incremental runs record the hash of the exact bytes parsed
+        MessageDigest digest = incremental ? BundleCache.newDigest() : null;
+        T result;
+        if (reference && referenceCache != null) {
+            result = incremental ? referenceCache.load(p, digests) : referenceCache.load(p);
+        } else {
+            result = reference ? codec.readReference(p, digest) : codec.read(p, digest);
+            if (digest != null) {
+                digests.put(p, BundleCache.hex(digest));
             }
         }
-        writeJson(map);
-        writeYaml(map);
+        metrics.loadNanos += System.nanoTime() - start;
+        metrics.files++;
+        metrics.bytesRead += size;
+        return result;
     }
 
-    private void writeJson(Map<String, Object> map) throws IOException {
-        // Convert the map back to JSON and serialize it.
-        if (!outputJSON) {
-            return;
+    /**
+     * @return the settings that affect the content of the outputs, to detect changes between incremental runs
+     */
+    private String options() {
+
+        return "yaml=" + outputYaml + ",json=" + outputJSON + ",dedup=" + deduplicate + ",prune=" + prune
+               + ",minjson=" + outputMinifiedJSON + ",smile=" + outputSmile + ",cbor=" + outputCbor
+               + ",canonical=" + canonical + ",slices=" + slices + ",index=" + outputIndex
+               + ",failOnAmbiguousRefs=" + failOnAmbiguousReferences;
+    }
+
+    /**
+     * @return the outputs of the bundle and of its slices
+     */
+    private List<Path> outputPaths() {
+
+        List<Path> paths = outputPaths(outputFile);
+        slices.forEach(slice -> paths.addAll(outputPaths(outputFile + "." + slice.getName())));
+        return paths;
+    }
+
+    private List<Path> outputPaths(String name) {
+
+        List<Path> paths = new ArrayList<>();
+        if (outputJSON) {
+            paths.add(outputPath(name, JSON_EXT));
+            if (outputIndex) {
+                paths.add(outputPath(name, JSON_EXT + BundleIndex.SUFFIX));
+            }
+        }
+        if (outputYaml) {
+            paths.add(outputPath(name, yamlExt));
+        }
+        if (outputMinifiedJSON) {
+            paths.add(outputPath(name, MIN_JSON_EXT));
+            if (outputIndex) {
+                paths.add(outputPath(name, MIN_JSON_EXT + BundleIndex.SUFFIX));
+            }
+        }
+        if (outputSmile) {
+            paths.add(outputPath(name, SMILE_EXT));
         }
+        if (outputCbor) {
+            paths.add(outputPath(name, CBOR_EXT));
+        }
+        return paths;
+    }
 
-        String json = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(map);
+    private Path outputPath(String name, String suffix) {
 
-        writeData(JSON_EXT, json);
+        return Paths.get(outputDir).resolve(String.format("%s.%s", name, suffix));
     }
 
     /**
-     * Convert the map back to YAML and serialize it.
+     * Sorts the sections of the components, and the entries of each section, by name. Components collected from
+     * referenced files are otherwise ordered by hashing, which may change when unrelated components are added.
      */
-    private void writeYaml(Map<String, Object> map) throws IOException {
+    private static void sortComponents(Map<String, Object> map) {
 
-        if (!outputYaml) {
+        Object components = map.get("components");
+        if (!(components instanceof Map)) {
             return;
         }
+        Map<String, Object> sections = sorted(castIt(components));
+        for (Map.Entry<String, Object> e : sections.entrySet()) {
+            if (e.getValue() instanceof Map) {
+                e.setValue(sorted(castIt(e.getValue())));
+            }
+        }
+        map.put("components", sections);
+    }
 
-        YAMLFactory yamlFactory = new YAMLFactory();
-        yamlFactory.enable(Feature.MINIMIZE_QUOTES);
-        yamlFactory.disable(Feature.SPLIT_LINES);
-        yamlFactory.disable(Feature.WRITE_DOC_START_MARKER);
-        yamlFactory.disable(Feature.ALWAYS_QUOTE_NUMBERS_AS_STRINGS);
-        yamlFactory.disable(Feature.LITERAL_BLOCK_STYLE);
+    private static Map<String, Object> sorted(Map<String, Object> map) {
 
-        ObjectMapper objMapper = new ObjectMapper(yamlFactory);
-        String yamlOutput = objMapper.writerWithDefaultPrettyPrinter().writeValueAsString(map);
-        writeData(yamlExt, yamlOutput);
+        List<String> keys = new ArrayList<>(map.keySet());
+        Collections.sort(keys);
+        Map<String, Object> sorted = new LinkedHashMap<>();
+        keys.forEach(k -> sorted.put(k, map.get(k)));
+        return sorted;
     }
 
-    private void writeData(String suffix, String output) throws IOException {
+    /**
+     * Streams the bundled map to every selected output in a single pass over the tree. Each output is written to a
+     * temporary file first and moved in place once complete, so that readers never see a partially written file. An
+     * output that already holds the same content is left untouched, keeping its modification time for build tools.
+     * The index of a JSON output is recorded while it is written, and written once it is complete.
+     *
+     * @return true if an output was written, false if all of them were unchanged
+     */
+    boolean write(Map<String, Object> map) throws IOException {
 
-        LOG.debug("OpenAPI Bundler: write bundled {} file to: {} in directory: {}", suffix, outputFile, outputDir);
+        return write(map, outputPaths(outputFile));
+    }
 
-        Path dir = Paths.get(outputDir);
+    private boolean write(Map<String, Object> map, List<Path> outputs) throws IOException {
 
-        Path outPath = dir.resolve(String.format("%s.%s", outputFile, suffix));
-        // write the output
+        if (outputs.isEmpty()) {
+            return false;
+        }
+        long start = System.nanoTime();
+        LOG.debug("OpenAPI Bundler: write bundled files {} in directory: {}", outputs, outputDir);
 
+        Path dir = Paths.get(outputDir);
         if (!Files.exists(dir)) {
             Files.createDirectories(dir);
         }
-        Files.write(outPath, output.getBytes());
 
-        // validate the output file
-        validateSpecification(outPath);
+        // temporary files, in the order of their outputs
+        List<Path> temps = new ArrayList<>();
+        List<Path> targets = new ArrayList<>();
+        List<JsonGenerator> generators = new ArrayList<>();
+        List<BundleIndex.Recorder> recorders = new ArrayList<>();
+        try {
+            for (Path output : outputs) {
+                if (output.getFileName().toString().endsWith(BundleIndex.SUFFIX)) {
+                    continue;
+                }
+                Path temp = Files.createTempFile(dir, output.getFileName().toString(), ".tmp");
+                temps.add(temp);
+                targets.add(output);
+                OutputStream out = Files.newOutputStream(temp);
+                BundleIndex.Recorder recorder = null;
+                if (outputs.contains(output.resolveSibling(output.getFileName() + BundleIndex.SUFFIX))) {
+                    recorder = new BundleIndex.Recorder(out, output.getFileName().toString());
+                    out = recorder;
+                }
+                JsonGenerator generator = generator(output, out);
+                if (recorder != null) {
+                    recorder.setGenerator(generator);
+                }
+                generators.add(generator);
+                recorders.add(recorder);
+            }
+            TreeWriter.write(map, generators, recorders);
+            for (JsonGenerator generator : generators) {
+                generator.close();
+            }
+            for (int i = 0, n = targets.size(); i < n; i++) {
+                if (recorders.get(i) != null) {
+                    Path index = targets.get(i).resolveSibling(targets.get(i).getFileName() + BundleIndex.SUFFIX);
+                    Path temp = Files.createTempFile(dir, index.getFileName().toString(), ".tmp");
+                    temps.add(temp);
+                    targets.add(index);
+                    try (OutputStream out = Files.newOutputStream(temp)) {
+                        recorders.get(i).writeIndex(out);
+                    }
+                }
+            }
+            int unchanged = 0;
+            for (int i = 0; i < targets.size(); i++) {
+                if (isSame(temps.get(i), targets.get(i))) {
+                    LOG.debug("OpenAPI Bundler: {} is unchanged", targets.get(i));
+                    unchanged++;
+                } else {
+                    moveInPlace(temps.get(i), targets.get(i));
+                }
+            }
+            metrics.unchangedOutputs += unchanged;
+            return unchanged < targets.size();
+        } finally {
+            for (JsonGenerator generator : generators) {
+                if (!generator.isClosed()) {
+                    generator.close();
+                }
+            }
+            for (Path temp : temps) {
+                Files.deleteIfExists(temp);
+            }
+            metrics.writeNanos += System.nanoTime() - start;
+        }
     }
 
-    private <T> T loadYaml(Path fName) throws IOException {
+    private JsonGenerator generator(Path output, OutputStream out) throws IOException {
+
+        String name = output.getFileName().toString();
+        if (name.endsWith("." + MIN_JSON_EXT)) {
+            return codec.createMinifiedJsonGenerator(out);
+        } else if (name.endsWith("." + JSON_EXT)) {
+            return codec.createJsonGenerator(out);
+        } else if (name.endsWith("." + SMILE_EXT)) {
+            return codec.createSmileGenerator(out);
+        } else if (name.endsWith("." + CBOR_EXT)) {
+            return codec.createCborGenerator(out);
+        }
+        return codec.createYamlGenerator(out);
+    }
 
-        try (InputStream is = Files.newInputStream(fName)) {
-            return new Yaml().load(is);
+    private static boolean isSame(Path written, Path output) throws IOException {
+
+        return Files.exists(output) && Files.size(output) == Files.size(written) && Files.mismatch(written, output) == -1;
+    }
+
+    private static void moveInPlace(Path source, Path target) throws IOException {
+
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
         }
     }
 
     private Map<String, Object> handlerPointer(String pointer) {
 
+        metrics.refsResolved++;
         try {
             Map<String, Object> result = new HashMap<>();
             int hashIndex = pointer.indexOf("#");
@@ -182,6 +577,10 @@ public class BundlerProcessor {
                 String refKey = pointer.substring(pointer.lastIndexOf("/") + 1);
 
                 LOG.debug("refKey = {}", refKey);
+                if (graph != null) {
+                    Path file = workingFiles.isEmpty() ? metrics.getSpec() : workingFiles.peekFirst();
+                    graph.addReference(graphNodes.peekFirst(), graph.node(file, pointer));
+                }
 
                 if (pointer.contains("components")) {
                     // if the $ref is an object, keep it that way and if $ref is not an object, make
@@ -194,28 +593,24 @@ public class BundlerProcessor {
                     }
                     if (isRefMapObject(refMap)) {
                         result.put(REF, pointer);
+                        if (deduplicator != null) {
+                            deduplicator.reference(result, refMap);
+                        }
                     } else {
                         result = refMap;
                     }
                 } else {
                     // This is something extracted from extenal file and the reference is still
                     // local.
-                    // need to look up for all reference files in order to find it.
-                    Map<String, Object> refMap = null;
-                    for (Map<String, Object> r : references.values()) {
-                        refMap = castIt(r.get(refKey));
-                        if (refMap != null) {
-                            break;
-                        }
-                    }
+                    // look it up in the files loaded so far.
+                    Map<String, Object> refMap = castIt(symbols.resolve(pointer, workingFiles.peekFirst()));
 
                     if (refMap == null) {
                         throw new BundlerException("Could not resolve reference locally in components for key " + refKey
                                                           + ". Please check your components section.");
                     }
                     if (isRefMapObject(refMap)) {
-                        definitions.put(refKey, refMap);
-                        result.put(REF, "#/components/schemas/" + refKey);
+                        define(refKey, refMap, result);
                     } else {
                         result = refMap;
                     }
@@ -237,18 +632,25 @@ public class BundlerProcessor {
                         throw new BundlerException("Unable to determine refKey for pointer: " + pointer);
                     }
 
-                    definitions.put(refKey, refMap);
                     // update the ref pointer to local
-                    result.put(REF, "#/components/schemas/" + refKey);
+                    define(refKey, refMap, result);
                 } else {
                     // simple type, inline refMap instead.
                     result = refMap;
                 }
                 refMap.remove(EXT_REF);
-                resolveMap(refMap);
-                workingDirs.removeFirst();
+                if (graph != null) {
+                    String node = graph.node(workingFiles.peekFirst(), isExtRef ? pointer.substring(hashIndex) : null);
+                    graph.addReference(graphNodes.peekFirst(), node);
+                    graphNodes.addFirst(node);
+                }
+                // walk the referenced content next, relative to its file
+                frames.push(new FileFrame());
+                push(refMap);
             }
             return result;
+        } catch (BundlerLimitException ex) {
+            throw ex;
         } catch (Exception ex) {
             throw new BundlerException(
                     "Unexpected Exception in OpenAPI Bundler",
@@ -256,6 +658,82 @@ public class BundlerProcessor {
         }
     }
 
+    private void checkTime() {
+
+        Duration max = limits.getMaxDuration();
+        if (max != null && System.nanoTime() - started > max.toNanos()) {
+            throw new BundlerLimitException("Limit of " + max.toMillis() + " ms exceeded bundling " + metrics.getSpec());
+        }
+    }
+
+    /**
+     * Counts the nodes of a map or list once the resolver walked it, from the counts of its children, so that aliases
+     * expanding beyond the limit fail as soon as they are walked rather than after the whole spec is resolved.
+     * Children that were not walked, e.g. references replaced by a pointer, or that are still being walked, count
+     * with their direct values only, which keeps the count below that of {@link #checkNodes(Map)}.
+     */
+    private void countNodes(Object node, Collection<Object> values) {
+
+        if (limits.getMaxNodes() == Long.MAX_VALUE) {
+            return;
+        }
+        long count = 1;
+        for (Object value : values) {
+            Long known = nodeCounts.get(value);
+            if (known != null) {
+                count += known;
+            } else if (value instanceof Map) {
+                count += 1 + ((Map<?, ?>) value).size();
+            } else if (value instanceof List) {
+                count += 1 + ((List<?>) value).size();
+            } else {
+                count++;
+            }
+            if (count > limits.getMaxNodes()) {
+                throw new BundlerLimitException("Limit of " + limits.getMaxNodes() + " nodes exceeded, aliases or inline "
+                                                        + "references of " + metrics.getSpec() + " expand too much");
+            }
+        }
+        nodeCounts.put(node, count);
+    }
+
+    /**
+     * Counts the nodes of the bundled spec as they would be written, shared nodes once per occurrence, stopping as
+     * soon as the limit is exceeded so that an exponential expansion is not walked. The resolver already fails on the
+     * expansions it walks, this exact count covers the spec as written, with the components added from references.
+     */
+    private void checkNodes(Map<String, Object> map) {
+
+        long count = 0;
+        Deque<Object> stack = new ArrayDeque<>();
+        stack.push(map);
+        while (!stack.isEmpty()) {
+            Object node = stack.pop();
+            if (++count > limits.getMaxNodes()) {
+                throw new BundlerLimitException("Limit of " + limits.getMaxNodes() + " nodes exceeded, aliases or inline "
+                                                        + "references of " + metrics.getSpec() + " expand too much");
+            }
+            if (node instanceof Map) {
+                ((Map<?, ?>) node).values().forEach(stack::push);
+            } else if (node instanceof List) {
+                ((List<?>) node).forEach(stack::push);
+            }
+        }
+    }
+
+    /**
+     * Adds a schema to the definitions and points the given reference to it.
+     */
+    private void define(String refKey, Map<String, Object> refMap, Map<String, Object> reference) {
+
+        definitions.put(refKey, refMap);
+        reference.put(REF, "#/components/schemas/" + refKey);
+        if (deduplicator != null) {
+            deduplicator.schema(refKey, refMap, workingFiles.peekFirst());
+            deduplicator.reference(reference, refMap);
+        }
+    }
+
     /**
      * Check if the input map is an json object or not.
      *
@@ -309,49 +787,142 @@ public class BundlerProcessor {
      */
     private Map<String, Object> loadRef(String path) throws IOException {
 
-        Path p = workingDirs.peekFirst().resolve(path).normalize();
+        Path p;
+        URI location;
+        if (LOCATION.matcher(path).matches() || !"file".equals(workingLocations.peekFirst().getScheme())) {
+            location = location(path);
+            p = resolve(location);
+            if (!"file".equals(location.getScheme())) {
+                remote = true;
+                if (graph != null) {
+                    graph.addLocation(p, location);
+                }
+            }
+        } else {
+            p = workingDirs.peekFirst().resolve(path).normalize();
+            location = p.toAbsolutePath().toUri();
+        }
+        if ("file".equals(location.getScheme())) {
+            checkRoot(p);
+        }
+        if (graph != null) {
+            graph.addFile(workingFiles.isEmpty() ? metrics.getSpec() : workingFiles.peekFirst(), p);
+        }
         workingDirs.addFirst(p.getParent());
+        workingFiles.addFirst(p);
+        workingLocations.addFirst(location);
+        if (workingFiles.size() > limits.getMaxReferenceDepth()) {
+            throw new BundlerLimitException("Limit of " + limits.getMaxReferenceDepth()
+                                                    + " nested reference files exceeded loading " + p);
+        }
+        dependencies.add(p);
         Map<String, Object> result = references.get(p.toString());
         if (result == null) {
             LOG.debug("Current path to load = {}", p);
             LOG.debug("Current working dir  = {}", workingDirs.peekFirst());
 
-            result = loadYaml(p);
+            result = read(p, true);
             references.put(p.toString(), result);
+            symbols.add(p, result);
 
+        } else {
+            metrics.cacheHits++;
         }
         return result;
     }
 
+    private URI location(String path) {
+
+        try {
+            return LOCATION.matcher(path).matches() ? new URI(path)
+                                                    : workingLocations.peekFirst().resolve(new URI(null, null, path, null));
+        } catch (URISyntaxException e) {
+            throw new BundlerException("Invalid location of reference " + path, e);
+        }
+    }
+
+    private void checkRoot(Path p) throws AccessDeniedException {
+
+        if (rootDir != null && !p.toAbsolutePath().normalize().startsWith(rootDir)) {
+            throw new AccessDeniedException(p.toString(), null, "outside of " + rootDir);
+        }
+    }
+
+    /**
+     * Finds the content of a file that is not referenced by a relative path on the local file system, once per run.
+     */
+    private Path resolve(URI location) throws IOException {
+
+        Path resolved = locations.get(location);
+        if (resolved != null) {
+            return resolved;
+        }
+        for (ReferenceResolver resolver : resolvers) {
+            Path p = resolver.resolve(location);
+            if (p != null) {
+                locations.put(location, p);
+                return p;
+            }
+        }
+        throw new BundlerException("No resolver supports the location of reference " + location);
+    }
+
     /**
-     * It deep iterate a map object and looking for "$ref" and handle it.
+     * It deep iterates a map object, looking for "$ref" and handling it. The tree is walked with an explicit stack
+     * rather than recursion, so deeply nested specs do not overflow the Java stack, and every map and list is walked
+     * once, which also stops the walk at recursive structures.
      *
      * @param map the map of openapi.yaml
      */
     public void resolveMap(Map<String, Object> map) {
 
-        if (map.containsKey(RESOLVING_FLAG)) {
-            // already resolving, avoid stack overflow
+        walk(map);
+    }
+
+    public void resolveList(List<Object> list) {
+
+        walk(list);
+    }
+
+    private void walk(Object node) {
+
+        int base = frames.size();
+        push(node);
+        while (frames.size() > base) {
+            if (++steps == 1024) {
+                steps = 0;
+                checkTime();
+            }
+            Frame frame = frames.peek();
+            if (!frame.next()) {
+                frames.pop();
+                frame.done();
+            }
+        }
+    }
+
+    private void push(Object node) {
+
+        if (!visited.add(node)) {
             return;
         }
-        map.put(RESOLVING_FLAG, RESOLVING_FLAG);
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-            String key = String.valueOf(entry.getKey());
-            Object value = entry.getValue();
-            LOG.debug("resolveMap key = {} value = {}", key, value);
-            // mappings can be named refs
-            if (DISCRIMINATOR.equals(key)&&map.containsKey(ONE_OF)) {
-                entry.setValue(checkDiscriminatorMapping(value));
-            } else {
-                entry.setValue(checkVal(value));
+        if (node instanceof Map) {
+            frames.push(new MapFrame(castIt(node)));
+            metrics.maxDepth = Math.max(metrics.maxDepth, ++depth);
+            if (depth > limits.getMaxNestingDepth()) {
+                throw new BundlerLimitException("Limit of " + limits.getMaxNestingDepth() + " nested maps exceeded in "
+                                                        + (workingFiles.isEmpty() ? metrics.getSpec() : workingFiles.peekFirst()));
             }
+        } else {
+            frames.push(new ListFrame(castIt(node)));
         }
-        map.remove(RESOLVING_FLAG);
     }
 
+    /**
+     * Replaces a value that is a reference, or schedules the walk of a map or list value.
+     */
     private Object checkVal(Object value) {
 
-        Object rVal = value;
         if (value instanceof Map) {
             // check if this map is $ref, it should be size = 1
             Map<String, Object> valMap = castIt(value);
@@ -359,43 +930,271 @@ public class BundlerProcessor {
                 Object refString = valMap.get(REF);
                 if (refString != null) {
                     LOG.debug("pointer = {}", refString);
-                    rVal = handlerPointer(refString.toString());
+                    return handlerPointer(refString.toString());
                 }
             }
-            resolveMap(valMap);
+            push(valMap);
         } else if (value instanceof List) {
-            resolveList(castIt(value));
+            push(value);
         }
-        return rVal;
+        return value;
     }
 
-    private Object checkDiscriminatorMapping(Object value) {
-        if (!(value instanceof Map)) {
-            return checkVal(value);
-        }
-        Map<String, Object> discriminator = castIt(value);
-        Map<String,Object> mapping = castIt(discriminator.get("mapping"));
-        for (Map.Entry<String, Object> e: mapping.entrySet()) {
-            e.setValue(handlerPointer(e.getValue().toString()).get(REF));
-        }
-        return value;
+    public void setOutputYaml(boolean outputYaml) {
+
+        this.outputYaml = outputYaml;
     }
 
-    public void resolveList(List<Object> list) {
+    public void setOutputJSON(boolean outputJSON) {
 
-        for (int i = 0; i < list.size(); i++) {
-            list.set(i, checkVal(list.get(i)));
+        this.outputJSON = outputJSON;
+    }
+
+    /**
+     * @param outputMinifiedJSON true to write the bundle as JSON without whitespace, to <code>outputFile.min.json</code>
+     */
+    public void setOutputMinifiedJSON(boolean outputMinifiedJSON) {
+
+        this.outputMinifiedJSON = outputMinifiedJSON;
+    }
+
+    /**
+     * @param outputSmile true to write the bundle in the Smile binary format, to <code>outputFile.smile</code>
+     */
+    public void setOutputSmile(boolean outputSmile) {
+
+        this.outputSmile = outputSmile;
+    }
+
+    /**
+     * @param outputCbor true to write the bundle in the CBOR binary format, to <code>outputFile.cbor</code>
+     */
+    public void setOutputCbor(boolean outputCbor) {
+
+        this.outputCbor = outputCbor;
+    }
+
+    /**
+     * Sets the codec used to read and write files. By default a codec shared by all processors is used.
+     *
+     * @param codec the codec
+     */
+    public void setCodec(BundlerCodec codec) {
+
+        this.codec = codec;
+    }
+
+    /**
+     * Shares parsed reference files with other processors, so that common model files are only parsed once.
+     *
+     * @param referenceCache the shared cache
+     */
+    public void setReferenceCache(ReferenceCache referenceCache) {
+
+        this.referenceCache = referenceCache;
+    }
+
+    /**
+     * Enables skipping the bundling when neither the spec nor any file it references changed since the last run.
+     * The files and their content hashes are recorded in a cache file in the output directory.
+     *
+     * @param incremental true to skip bundling of unchanged specs
+     */
+    public void setIncremental(boolean incremental) {
+
+        this.incremental = incremental;
+    }
+
+    /**
+     * @return every file the bundle was built from, the spec first. Available after {@link #call()}
+     */
+    public Set<Path> getDependencies() {
+
+        return Collections.unmodifiableSet(dependencies);
+    }
+
+    /**
+     * @return the spec bundled by this processor
+     */
+    Path getSpec() {
+
+        return Paths.get(folder, fileName).normalize();
+    }
+
+    /**
+     * Enables discovering all externally referenced files first and parsing them in parallel, before references
+     * are resolved. The resolution itself remains single threaded.
+     *
+     * @param parallelLoading true to parse referenced files in parallel
+     */
+    public void setParallelLoading(boolean parallelLoading) {
+
+        this.parallelLoading = parallelLoading;
+    }
+
+    /**
+     * Enables merging structurally identical schemas in the components. Each distinct schema is kept once, all
+     * references are pointed to it, and different schemas found under the same name are kept under numbered names
+     * and reported.
+     *
+     * @param deduplicate true to merge identical schemas
+     */
+    public void setDeduplicate(boolean deduplicate) {
+
+        this.deduplicate = deduplicate;
+    }
+
+    /**
+     * @return the names found for several different schemas when deduplicating, with the files they come from
+     */
+    public List<String> getSchemaCollisions() {
+
+        return deduplicator == null ? Collections.emptyList() : deduplicator.getCollisions();
+    }
+
+    /**
+     * Records the dependencies of the spec into a graph while references are resolved: the files it is built from,
+     * the files each file references, and the entries each referenced entry references.
+     *
+     * @param graph the graph to add to
+     */
+    public void setDependencyGraph(DependencyGraph graph) {
+
+        this.graph = graph;
+    }
+
+    /**
+     * Sets budgets bounding the work of the bundling. Nothing is limited by default. Files prefetched by parallel
+     * loading are accounted for when the bundling reads them, after they are parsed.
+     *
+     * @param limits the limits
+     */
+    public void setLimits(BundlerLimits limits) {
+
+        this.limits = limits;
+    }
+
+    /**
+     * Confines the local files read to a directory, e.g. for specs uploaded by users: the spec, or a reference to
+     * a file outside of it, fails with an {@link AccessDeniedException}, as the cause of a {@link BundlerException}
+     * for references.
+     *
+     * @param rootDir the directory, null for no restriction, the default
+     */
+    public void setRootDir(Path rootDir) {
+
+        this.rootDir = rootDir == null ? null : rootDir.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Enables writing a sidecar index next to each JSON output, <code>&lt;output&gt;.idx</code>, with the byte range
+     * of every path item and component, so that services can look up a few entries of a large bundle with a
+     * {@link BundleIndex} instead of parsing all of it.
+     *
+     * @param outputIndex true to index the JSON and minified JSON outputs
+     */
+    public void setOutputIndex(boolean outputIndex) {
+
+        this.outputIndex = outputIndex;
+    }
+
+    /**
+     * Enables a canonical order of the components: sections and their entries sorted by name, so that the outputs of
+     * unchanged specs are byte for byte identical across runs and versions. Other maps keep the order of the files.
+     *
+     * @param canonical true to sort the components
+     */
+    public void setCanonical(boolean canonical) {
+
+        this.canonical = canonical;
+    }
+
+    /**
+     * Writes slices of the bundle next to it, e.g. one per tag for services that serve a few operations of a large
+     * spec. References are resolved once, and the slices share the resolved tree: each one only filters the paths and
+     * keeps the components its operations reach. Slices are validated with the bundle, and written in the same
+     * formats as <code>&lt;outputFile&gt;.&lt;slice name&gt;.&lt;ext&gt;</code>.
+     *
+     * @param slices the slices, with distinct names
+     */
+    public void setSlices(List<BundleSlice> slices) {
+
+        Set<String> names = new HashSet<>();
+        for (BundleSlice slice : slices) {
+            if (!names.add(slice.getName())) {
+                throw new BundlerException("Duplicate slice name " + slice.getName());
+            }
         }
+        this.slices = new ArrayList<>(slices);
     }
 
-    public void setOutputYaml(boolean outputYaml) {
+    /**
+     * Sets how references that are not relative paths are resolved, e.g. <code>classpath:/models/pet.yaml</code> or
+     * <code>https://example.com/models/pet.yaml</code>, and the relative references of the files they point to. Only
+     * <code>file:</code> locations are resolved by default. Specs referencing files that are not local are bundled on
+     * every incremental run.
+     *
+     * @param resolvers the resolvers, the first supporting a location is used
+     */
+    public void setResolvers(List<ReferenceResolver> resolvers) {
 
-        this.outputYaml = outputYaml;
+        this.resolvers = resolvers;
     }
 
-    public void setOutputJSON(boolean outputJSON) {
+    /**
+     * Enables removing the components that cannot be reached through references from the paths, webhooks and other
+     * top level entries of the spec. Security schemes are always kept.
+     *
+     * @param prune true to remove unreachable components
+     */
+    public void setPrune(boolean prune) {
 
-        this.outputJSON = outputJSON;
+        this.prune = prune;
+    }
+
+    /**
+     * @return the pointers of the components removed as unreachable, e.g. <code>#/components/schemas/Pet</code>
+     */
+    public List<String> getRemovedComponents() {
+
+        return removedComponents;
+    }
+
+    /**
+     * Makes local references defined in several loaded files, e.g. <code>#/Common</code> in two model files, fail the
+     * bundling. By default the file loaded first is used and a warning is logged.
+     *
+     * @param failOnAmbiguousReferences true to fail on ambiguous local references
+     */
+    public void setFailOnAmbiguousReferences(boolean failOnAmbiguousReferences) {
+
+        this.failOnAmbiguousReferences = failOnAmbiguousReferences;
+    }
+
+    /**
+     * @return the local references defined in several loaded files, with those files; the first one was used
+     */
+    public Map<String, List<Path>> getAmbiguousReferences() {
+
+        return symbols.getAmbiguous();
+    }
+
+    /**
+     * Sets a listener notified with the metrics of the bundling once {@link #call()} completes.
+     *
+     * @param metricsListener the listener
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * @return the time spent in each phase and the amount of work done, filled in by {@link #call()}
+     */
+    public BundlerMetrics getMetrics() {
+
+        return metrics;
     }
 
     /**
@@ -409,17 +1208,251 @@ public class BundlerProcessor {
         return (T) val;
     }
 
-    public static boolean validateSpecification(Path p) {
+    /**
+     * @return the result of validating the bundled specification, null before {@link #call()}. Empty if the spec
+     * was skipped in incremental mode, as only valid bundles are recorded
+     */
+    public ValidationResults getValidationResults() {
+
+        return validationResults;
+    }
+
+    /**
+     * @return true if the bundled specification was validated without errors
+     */
+    public boolean isValid() {
+
+        if (validationResults == null || !validationResults.getSeverity().lt(Severity.ERROR)) {
+            return false;
+        }
+        for (ValidationResults results : sliceValidationResults.values()) {
+            if (!results.getSeverity().lt(Severity.ERROR)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the result of validating each slice, by name, empty if there are no slices or validation was skipped
+     */
+    public Map<String, ValidationResults> getSliceValidationResults() {
+
+        return Collections.unmodifiableMap(sliceValidationResults);
+    }
+
+    /**
+     * Validates the bundled tree in memory. All output formats hold the same document, so it is validated once.
+     */
+    void validate(Map<String, Object> map, Path spec) {
+
+        long start = System.nanoTime();
+        validationResults = validate(codec.toTree(map), spec.toUri());
+        metrics.validateNanos = System.nanoTime() - start;
+        log(validationResults, spec);
+    }
+
+    private void validateSlice(String name, Map<String, Object> slice, Path spec) {
+
+        long start = System.nanoTime();
+        ValidationResults results = validate(codec.toTree(slice), spec.toUri());
+        metrics.validateNanos += System.nanoTime() - start;
+        sliceValidationResults.put(name, results);
+        log(results, Paths.get(outputDir, outputFile + "." + name));
+    }
+
+    /**
+     * Validates an OpenAPI 3 document that is already parsed into a tree.
+     *
+     * @param tree the document
+     * @param location the location of the document, references are resolved against it
+     * @return the validation results
+     */
+    public static ValidationResults validate(JsonNode tree, URI location) {
 
         try {
-            @SuppressWarnings("unused") OpenApi3 model = (OpenApi3) new OpenApiParser().parse(new File(p.toString()), true);
+            OpenApi3 model = (OpenApi3) new OpenApiParser().parse(tree, location.toURL(), true);
+            return model.getValidationResults();
+        } catch (Exception e) {
+            return failure(e);
+        }
+    }
+
+    /**
+     * Validates an OpenAPI 3 definition file.
+     *
+     * @param p the file
+     * @return the validation results
+     */
+    public static ValidationResults validate(Path p) {
+
+        try {
+            OpenApi3 model = (OpenApi3) new OpenApiParser().parse(new File(p.toString()), true);
+            return model.getValidationResults();
+        } catch (Exception e) {
+            return failure(e);
+        }
+    }
+
+    public static boolean validateSpecification(Path p) {
+
+        ValidationResults results = validate(p);
+        log(results, p);
+        return results.getSeverity().lt(Severity.ERROR);
+    }
+
+    private static ValidationResults failure(Exception e) {
+
+        LOG.error("OpenAPI3 Validation: failed with exception", e);
+        ValidationResults results = new ValidationResults();
+        results.addError(String.valueOf(e.getMessage()), null);
+        return results;
+    }
 
+    private static void log(ValidationResults results, Path p) {
+
+        if (results.getSeverity().lt(Severity.ERROR)) {
             LOG.info("OpenAPI3 Validation: Definition file: <{}> is valid ....", p);
+        } else {
+            LOG.error("OpenAPI3 Validation: Definition file <{}> is not valid", p);
+        }
+        for (ValidationResults.ValidationItem item : results.getItems()) {
+            LOG.warn("OpenAPI3 Validation: {} {}", item.getSeverity(), item.getMsg());
+        }
+    }
+
+    /**
+     * A node being walked. Each call to {@link #next()} handles one child, which may push further frames.
+     */
+    private abstract static class Frame {
+
+        /**
+         * @return false once all children are handled
+         */
+        abstract boolean next();
+
+        void done() {
+
+        }
+    }
+
+    private class MapFrame extends Frame {
+
+        private final Map<String, Object> map;
+        private final Iterator<Map.Entry<String, Object>> entries;
+
+        MapFrame(Map<String, Object> map) {
+
+            this.map = map;
+            this.entries = map.entrySet().iterator();
+        }
+
+        @Override
+        boolean next() {
+
+            if (!entries.hasNext()) {
+                return false;
+            }
+            Map.Entry<String, Object> entry = entries.next();
+            String key = String.valueOf(entry.getKey());
+            Object value = entry.getValue();
+            // the value is not logged, printing a subtree recurses through it and costs as much as the walk
+            LOG.debug("resolveMap key = {}", key);
+            // mappings can be named refs
+            if (DISCRIMINATOR.equals(key) && map.containsKey(ONE_OF) && value instanceof Map) {
+                Map<String, Object> discriminator = castIt(value);
+                Map<String, Object> mapping = castIt(discriminator.get("mapping"));
+                frames.push(new MappingFrame(mapping));
+            } else {
+                entry.setValue(checkVal(value));
+            }
+            return true;
+        }
+
+        @Override
+        void done() {
+
+            depth--;
+            countNodes(map, map.values());
+        }
+    }
+
+    private class ListFrame extends Frame {
+
+        private final List<Object> list;
+        private final ListIterator<Object> items;
+
+        ListFrame(List<Object> list) {
+
+            this.list = list;
+            this.items = list.listIterator();
+        }
+
+        @Override
+        boolean next() {
+
+            if (!items.hasNext()) {
+                return false;
+            }
+            items.set(checkVal(items.next()));
+            return true;
+        }
+
+        @Override
+        void done() {
+
+            countNodes(list, list);
+        }
+    }
+
+    private class MappingFrame extends Frame {
+
+        private final Map<String, Object> mapping;
+        private final Iterator<Map.Entry<String, Object>> entries;
+
+        MappingFrame(Map<String, Object> mapping) {
+
+            this.mapping = mapping;
+            this.entries = mapping.entrySet().iterator();
+        }
+
+        @Override
+        boolean next() {
+
+            if (!entries.hasNext()) {
+                return false;
+            }
+            Map.Entry<String, Object> e = entries.next();
+            Map<String, Object> reference = handlerPointer(e.getValue().toString());
+            e.setValue(reference.get(REF));
+            if (deduplicator != null) {
+                deduplicator.mapping(mapping, e.getKey(), reference);
+            }
             return true;
-        } catch (Exception e) {
-            LOG.error("OpenAPI3 Validation: Definition file <{}> in directory <{}> failed with exception", p, e);
-            return false;
         }
     }
 
+    /**
+     * Leaves a referenced file once its content is walked, restoring the location relative references resolve
+     * against.
+     */
+    private class FileFrame extends Frame {
+
+        @Override
+        boolean next() {
+
+            return false;
+        }
+
+        @Override
+        void done() {
+
+            workingDirs.removeFirst();
+            workingFiles.removeFirst();
+            workingLocations.removeFirst();
+            if (graph != null) {
+                graphNodes.removeFirst();
+            }
+        }
+    }
 }
@@ -0,0 +1,374 @@
+package com.networknt.openapi;
+
+import com.networknt.oas.validator.ValidationResults;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local HTTP server bundling specs on request, so that build agents do not start a JVM per spec. All requests share
+ * one {@link BundlerEngine}, and concurrent requests for the same spec, or for the same spec of identical archives,
+ * are served by a single bundling.
+ *
+ * <ul>
+ * <li><code>GET /bundle?spec=path/openapi.yaml&amp;format=yaml|json</code> bundles a spec below the root directory</li>
+ * <li><code>POST /bundle?spec=openapi.yaml&amp;format=yaml|json</code> bundles a spec from the zip archive sent as
+ * request body</li>
+ * <li><code>GET /stats</code> returns request counts and latencies as JSON</li>
+ * </ul>
+ *
+ * The bundled spec is returned with status 200, or the validation messages with status 422 if it is not valid.
+ * Specs may only reference files below the root directory, or in their archive, and archives are bounded in entries
+ * and uncompressed size.
+ */
+public class BundlerServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BundlerServer.class);
+
+    /**
+     * Default maximum number of entries of an uploaded archive.
+     */
+    public static final int DEFAULT_MAX_ARCHIVE_ENTRIES = 10_000;
+
+    /**
+     * Default maximum total uncompressed size of the entries of an uploaded archive.
+     */
+    public static final long DEFAULT_MAX_ARCHIVE_BYTES = 64L * 1024 * 1024;
+
+    private final Path root;
+    private final BundlerEngine engine;
+
+    // bundlings in progress, by spec path or by spec and archive hash
+    private final ConcurrentMap<Object, CompletableFuture<BundlerEngine.Bundle>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private long started;
+    private int maxArchiveEntries = DEFAULT_MAX_ARCHIVE_ENTRIES;
+    private long maxArchiveBytes = DEFAULT_MAX_ARCHIVE_BYTES;
+
+    /**
+     * @param root the directory spec paths of requests are resolved against; specs outside of it are refused
+     * @param engine the engine bundling the specs
+     */
+    public BundlerServer(Path root, BundlerEngine engine) {
+
+        this.root = root.toAbsolutePath().normalize();
+        this.engine = engine;
+    }
+
+    /**
+     * Starts serving requests, each on its own virtual thread.
+     *
+     * @param address the address to listen on, port 0 picks a free port
+     * @throws IOException if the server cannot be started
+     */
+    public void start(InetSocketAddress address) throws IOException {
+
+        server = HttpServer.create(address, 0);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/bundle", this::bundle);
+        server.createContext("/stats", this::stats);
+        started = System.nanoTime();
+        server.start();
+        LOG.info("OpenAPI Bundler: serving specs from <{}> on {}", root, server.getAddress());
+    }
+
+    public void stop() {
+
+        if (server != null) {
+            server.stop(0);
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @param maxArchiveEntries maximum number of entries of an uploaded archive, also bounded by the files limit of
+     * the engine. Default: {@link #DEFAULT_MAX_ARCHIVE_ENTRIES}
+     */
+    public void setMaxArchiveEntries(int maxArchiveEntries) {
+
+        this.maxArchiveEntries = maxArchiveEntries;
+    }
+
+    /**
+     * @param maxArchiveBytes maximum total uncompressed size of an uploaded archive, also bounded by the bytes limit
+     * of the engine. Default: {@link #DEFAULT_MAX_ARCHIVE_BYTES}
+     */
+    public void setMaxArchiveBytes(long maxArchiveBytes) {
+
+        this.maxArchiveBytes = maxArchiveBytes;
+    }
+
+    private void bundle(HttpExchange exchange) throws IOException {
+
+        long start = System.nanoTime();
+        requests.increment();
+        boolean success = false;
+        try {
+            Map<String, String> query = query(exchange);
+            String spec = query.get("spec");
+            String format = query.getOrDefault("format", "yaml");
+            if (!format.equals("yaml") && !format.equals("json")) {
+                send(exchange, 400, "Unsupported format " + format + ", expected yaml | json");
+                return;
+            }
+            BundlerEngine.Bundle bundle;
+            if ("POST".equals(exchange.getRequestMethod())) {
+                bundle = bundleArchive(exchange.getRequestBody(), spec == null ? "openapi.yaml" : spec);
+            } else if ("GET".equals(exchange.getRequestMethod())) {
+                if (spec == null) {
+                    send(exchange, 400, "Missing spec parameter");
+                    return;
+                }
+                Path p = root.resolve(spec).normalize();
+                if (!p.startsWith(root)) {
+                    send(exchange, 403, "Spec " + spec + " is outside of " + root);
+                    return;
+                }
+                bundle = bundleCoalesced(p, () -> engine.bundle(p, root));
+            } else {
+                send(exchange, 405, "Unsupported method " + exchange.getRequestMethod());
+                return;
+            }
+            if (!bundle.isValid()) {
+                send(exchange, 422, messages(bundle.getValidationResults()));
+                return;
+            }
+            boolean json = format.equals("json");
+            exchange.getResponseHeaders().set("Content-Type", json ? "application/json" : "application/yaml");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            if (json) {
+                bundle.writeJson(out);
+            } else {
+                bundle.writeYaml(out);
+            }
+            success = true;
+        } catch (NoSuchFileException e) {
+            send(exchange, 404, "File not found: " + e.getMessage());
+        } catch (BundlerLimitException e) {
+            send(exchange, 413, e.getMessage());
+        } catch (Exception e) {
+            if (e instanceof AccessDeniedException || e.getCause() instanceof AccessDeniedException) {
+                AccessDeniedException denied = (AccessDeniedException) (e instanceof AccessDeniedException ? e : e.getCause());
+                send(exchange, 403, "File " + denied.getFile() + " is " + denied.getReason());
+            } else {
+                LOG.error("OpenAPI Bundler: request {} failed", exchange.getRequestURI(), e);
+                send(exchange, 500, String.valueOf(e.getMessage()));
+            }
+        } finally {
+            if (!success) {
+                failures.increment();
+            }
+            long nanos = System.nanoTime() - start;
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            exchange.close();
+        }
+    }
+
+    /**
+     * Bundles a spec, or waits for the bundling of the same spec that is already in progress.
+     */
+    private BundlerEngine.Bundle bundleCoalesced(Object key, Bundling bundling) throws IOException {
+
+        CompletableFuture<BundlerEngine.Bundle> future = new CompletableFuture<>();
+        CompletableFuture<BundlerEngine.Bundle> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.increment();
+            future = existing;
+        } else {
+            try {
+                future.complete(bundling.run());
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            } finally {
+                inFlight.remove(key, future);
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+    }
+
+    private BundlerEngine.Bundle bundleArchive(InputStream body, String spec) throws IOException {
+
+        Path dir = Files.createTempDirectory("openapi-bundler");
+        try {
+            MessageDigest digest = BundleCache.newDigest();
+            extract(new DigestInputStream(body, digest), dir);
+            Path p = dir.resolve(spec).normalize();
+            if (!p.startsWith(dir)) {
+                throw new BundlerException("Spec " + spec + " is outside of the archive");
+            }
+            return bundleCoalesced(BundleCache.hex(digest) + "!" + spec, () -> engine.bundle(p, dir));
+        } finally {
+            // the cache must not keep files that are deleted now
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path p : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    engine.getReferenceCache().invalidate(p);
+                    Files.delete(p);
+                }
+            }
+        }
+    }
+
+    private void extract(InputStream body, Path dir) throws IOException {
+
+        BundlerLimits limits = engine.getLimits();
+        int maxEntries = Math.min(maxArchiveEntries, limits.getMaxFiles());
+        long remaining = Math.min(maxArchiveBytes, limits.getMaxBytes());
+        int entries = 0;
+        byte[] buffer = new byte[8192];
+        try (ZipInputStream zip = new ZipInputStream(body)) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                if (++entries > maxEntries) {
+                    throw new BundlerLimitException("Limit of " + maxEntries + " archive entries exceeded");
+                }
+                Path target = dir.resolve(entry.getName()).normalize();
+                if (!target.startsWith(dir)) {
+                    throw new BundlerException("Archive entry " + entry.getName() + " is outside of the archive");
+                }
+                if (entry.isDirectory()) {
+                    Files.createDirectories(target);
+                    continue;
+                }
+                Files.createDirectories(target.getParent());
+                // the sizes in the archive may lie, count the bytes as they are inflated
+                try (OutputStream out = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW)) {
+                    for (int n = zip.read(buffer); n != -1; n = zip.read(buffer)) {
+                        remaining -= n;
+                        if (remaining < 0) {
+                            throw new BundlerLimitException("Limit of " + Math.min(maxArchiveBytes, limits.getMaxBytes())
+                                                                    + " uncompressed archive bytes exceeded");
+                        }
+                        out.write(buffer, 0, n);
+                    }
+                }
+            }
+            // read the central directory as well, so that the body is hashed whole
+            for (int n = body.read(buffer); n != -1; n = body.read(buffer)) {
+                remaining -= n;
+                if (remaining < 0) {
+                    throw new BundlerLimitException("Limit of " + Math.min(maxArchiveBytes, limits.getMaxBytes())
+                                                            + " uncompressed archive bytes exceeded");
+                }
+            }
+        }
+    }
+
+    private void stats(HttpExchange exchange) throws IOException {
+
+        try (exchange) {
+            long count = requests.sum();
+            double seconds = (System.nanoTime() - started) / 1_000_000_000.0;
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("requests", count);
+            stats.put("failures", failures.sum());
+            stats.put("coalesced", coalesced.sum());
+            stats.put("inFlight", inFlight.size());
+            stats.put("requestsPerSecond", seconds > 0 ? count / seconds : 0);
+            stats.put("meanMillis", count > 0 ? totalNanos.sum() / 1_000_000.0 / count : 0);
+            stats.put("maxMillis", maxNanos.get() / 1_000_000.0);
+            stats.put("cachedFiles", engine.getReferenceCache().size());
+            stats.put("cachedBytes", engine.getReferenceCache().bytes());
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            send(exchange, 200, BundlerCodec.getDefault().toTree(stats).toString());
+        }
+    }
+
+    private static String messages(ValidationResults results) {
+
+        List<String> messages = new ArrayList<>();
+        for (ValidationResults.ValidationItem item : results.getItems()) {
+            messages.add(item.getSeverity() + " " + item.getMsg());
+        }
+        return String.join("\n", messages);
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+
+        Map<String, String> query = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw != null) {
+            for (String param : raw.split("&")) {
+                int eq = param.indexOf('=');
+                if (eq > 0) {
+                    query.put(URLDecoder.decode(param.substring(0, eq), StandardCharsets.UTF_8),
+                              URLDecoder.decode(param.substring(eq + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return query;
+    }
+
+    private interface Bundling {
+
+        BundlerEngine.Bundle run() throws IOException;
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+
+        if (exchange.getResponseCode() != -1) {
+            // failed while streaming the bundle, the status is already sent
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
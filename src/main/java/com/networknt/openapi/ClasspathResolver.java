@@ -0,0 +1,77 @@
+package com.networknt.openapi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves <code>classpath:</code> locations, e.g. <code>classpath:/models/pet.yaml</code>, to resources of a class
+ * loader, so that shared models can be packaged in a jar. Locations are written with a leading slash, relative
+ * references in the resources are then resolved against them.
+ *
+ * Resources in directories are used as they are. Resources in jars are copied once into a {@link ContentStore}, by
+ * default below the temporary directory.
+ */
+public class ClasspathResolver implements ReferenceResolver {
+
+    private final ClassLoader classLoader;
+    private final ContentStore store;
+
+    // resources copied from jars by this resolver
+    private final ConcurrentMap<URI, Path> copies = new ConcurrentHashMap<>();
+
+    /**
+     * Resolves resources of the context class loader of the current thread.
+     */
+    public ClasspathResolver() {
+
+        this(Thread.currentThread().getContextClassLoader(),
+             new ContentStore(Paths.get(System.getProperty("java.io.tmpdir"), "openapi-bundler", "classpath")));
+    }
+
+    /**
+     * @param classLoader the class loader of the resources
+     * @param store where resources in jars are copied
+     */
+    public ClasspathResolver(ClassLoader classLoader, ContentStore store) {
+
+        this.classLoader = classLoader;
+        this.store = store;
+    }
+
+    @Override
+    public Path resolve(URI location) throws IOException {
+
+        if (!"classpath".equalsIgnoreCase(location.getScheme())) {
+            return null;
+        }
+        Path copy = copies.get(location);
+        if (copy != null) {
+            return copy;
+        }
+        String path = location.isOpaque() ? location.getSchemeSpecificPart() : location.getPath();
+        URL url = classLoader.getResource(path.startsWith("/") ? path.substring(1) : path);
+        if (url == null) {
+            throw new NoSuchFileException(location.toString());
+        }
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return Paths.get(url.toURI());
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid resource URL " + url, e);
+            }
+        }
+        try (InputStream in = url.openStream()) {
+            copy = store.put(in.readAllBytes());
+        }
+        copies.put(location, copy);
+        return copy;
+    }
+}
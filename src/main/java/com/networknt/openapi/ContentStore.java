@@ -0,0 +1,109 @@
+package com.networknt.openapi;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Directory of files named after the SHA-256 hash of their content. Each distinct content is stored once and a
+ * stored file never changes, so it can be shared by processes and kept across runs. Files are written to a temporary
+ * file first and moved in place, readers never see a partial file.
+ */
+public class ContentStore {
+
+    private final Path dir;
+
+    /**
+     * @param dir the directory of the store, created when the first file is stored
+     */
+    public ContentStore(Path dir) {
+
+        this.dir = dir.toAbsolutePath().normalize();
+    }
+
+    public Path getDir() {
+
+        return dir;
+    }
+
+    /**
+     * Stores a content unless it is already.
+     *
+     * @param content the content
+     * @return the file holding the content
+     * @throws IOException if the file cannot be written
+     */
+    public Path put(byte[] content) throws IOException {
+
+        Path p = path(hash(content));
+        if (Files.exists(p)) {
+            return p;
+        }
+        Files.createDirectories(p.getParent());
+        Path tmp = Files.createTempFile(p.getParent(), p.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, content);
+            try {
+                Files.move(tmp, p, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, p);
+            }
+        } catch (FileAlreadyExistsException e) {
+            // stored concurrently, with the same content
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return p;
+    }
+
+    /**
+     * @param hash the hash of a content, as returned by {@link #hash(byte[])}
+     * @return the file holding the content, or null if it is not stored
+     */
+    public Path get(String hash) {
+
+        Path p = path(hash);
+        return Files.isRegularFile(p) ? p : null;
+    }
+
+    /**
+     * @param p a file of the store
+     * @return the hash of its content
+     */
+    public String hashOf(Path p) {
+
+        return p.getFileName().toString();
+    }
+
+    private Path path(String hash) {
+
+        if (!hash.matches("[0-9a-f]{64}")) {
+            throw new BundlerException("Invalid content hash " + hash);
+        }
+        return dir.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    /**
+     * @return the SHA-256 hash of a content, in hexadecimal
+     */
+    public static String hash(byte[] content) {
+
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new BundlerException("SHA-256 is not available", e);
+        }
+    }
+
+    static String hash(String text) {
+
+        return hash(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
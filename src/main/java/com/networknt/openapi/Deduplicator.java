@@ -0,0 +1,319 @@
+package com.networknt.openapi;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Merges structurally identical schemas of a bundle. The processor records every schema it moves into the
+ * components, and every reference it creates to one of them. Once references are resolved, schemas are grouped by
+ * shape: the content of a schema, where each reference stands for the shape of its target, so that two schemas
+ * referencing different schemas of the same name are told apart. Each shape is then kept once, under the first name
+ * it was found with, and all references are pointed to it. Different shapes found with the same name are kept under
+ * numbered names and reported as collisions.
+ */
+class Deduplicator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Deduplicator.class);
+    private static final String SCHEMAS = "#/components/schemas/";
+
+    // schemas in the order they were found, each object once
+    private final List<Candidate> candidates = new ArrayList<>();
+    private final Map<Object, Candidate> byShape = new IdentityHashMap<>();
+
+    // reference map -> schema it points to
+    private final Map<Object, Object> references = new IdentityHashMap<>();
+
+    // discriminator mapping -> key -> schema the value points to
+    private final Map<Object, Map<String, Object>> mappings = new IdentityHashMap<>();
+
+    private final List<String> collisions = new ArrayList<>();
+
+    /**
+     * Records a schema moved into the components.
+     *
+     * @param name the name it is stored under
+     * @param schema the schema
+     * @param file the file it comes from
+     */
+    void schema(String name, Object schema, Path file) {
+
+        if (schema instanceof Map && !byShape.containsKey(schema)) {
+            Candidate candidate = new Candidate(candidates.size(), name, schema, file);
+            candidates.add(candidate);
+            byShape.put(schema, candidate);
+        }
+    }
+
+    /**
+     * Records a reference map created to point to a schema of the components.
+     *
+     * @param reference the map holding the <code>$ref</code>
+     * @param schema the schema
+     */
+    void reference(Map<String, Object> reference, Object schema) {
+
+        if (String.valueOf(reference.get("$ref")).startsWith(SCHEMAS)) {
+            references.put(reference, schema);
+        }
+    }
+
+    /**
+     * Records a discriminator mapping value copied from a reference map.
+     *
+     * @param mapping the discriminator mapping
+     * @param key the key of the value
+     * @param reference the reference map the value was copied from
+     */
+    void mapping(Map<String, Object> mapping, String key, Map<String, Object> reference) {
+
+        Object schema = references.get(reference);
+        if (schema != null) {
+            mappings.computeIfAbsent(mapping, m -> new HashMap<>()).put(key, schema);
+        }
+    }
+
+    /**
+     * @return the names found for several different schemas, with the files they come from
+     */
+    List<String> getCollisions() {
+
+        return Collections.unmodifiableList(collisions);
+    }
+
+    /**
+     * Keeps one schema per shape in the components and points all recorded references to it.
+     *
+     * @param schemas the schemas of the components, updated in place
+     */
+    void deduplicate(Map<String, Object> schemas) {
+
+        int[] shapes = shapes();
+
+        // name each shape after the first schema found with it
+        Set<String> used = new LinkedHashSet<>();
+        for (Map.Entry<String, Object> e : schemas.entrySet()) {
+            if (!byShape.containsKey(e.getValue())) {
+                used.add(e.getKey());
+            }
+        }
+        Map<Integer, String> names = new HashMap<>();
+        Map<String, Object> kept = new LinkedHashMap<>();
+        Map<String, List<Candidate>> byName = new LinkedHashMap<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            Candidate candidate = candidates.get(i);
+            if (names.containsKey(shapes[i])) {
+                continue;
+            }
+            String name = candidate.name;
+            for (int n = 2; used.contains(name); n++) {
+                name = candidate.name + "_" + n;
+            }
+            used.add(name);
+            names.put(shapes[i], name);
+            kept.put(name, candidate.schema);
+            byName.computeIfAbsent(candidate.name, k -> new ArrayList<>()).add(candidate);
+        }
+        for (Map.Entry<String, List<Candidate>> e : byName.entrySet()) {
+            if (e.getValue().size() > 1) {
+                List<Path> files = new ArrayList<>();
+                e.getValue().forEach(c -> files.add(c.file));
+                String collision = e.getKey() + ": " + e.getValue().size() + " different schemas in " + files;
+                LOG.warn("OpenAPI Bundler: schema name collision {}", collision);
+                collisions.add(collision);
+            }
+        }
+
+        // keep the position of existing names, then add the new ones
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> e : schemas.entrySet()) {
+            if (!byShape.containsKey(e.getValue())) {
+                result.put(e.getKey(), e.getValue());
+            } else if (kept.containsKey(e.getKey())) {
+                result.put(e.getKey(), kept.get(e.getKey()));
+            }
+        }
+        result.putAll(kept);
+        int removed = byShape.size() - names.size();
+        schemas.clear();
+        schemas.putAll(result);
+
+        for (Map.Entry<Object, Object> e : references.entrySet()) {
+            Candidate target = byShape.get(e.getValue());
+            if (target != null) {
+                Map<String, Object> reference = BundlerProcessor.castIt(e.getKey());
+                reference.put("$ref", SCHEMAS + names.get(shapes[target.index]));
+            }
+        }
+        for (Map.Entry<Object, Map<String, Object>> e : mappings.entrySet()) {
+            Map<String, Object> mapping = BundlerProcessor.castIt(e.getKey());
+            for (Map.Entry<String, Object> value : e.getValue().entrySet()) {
+                Candidate target = byShape.get(value.getValue());
+                if (target != null) {
+                    mapping.put(value.getKey(), SCHEMAS + names.get(shapes[target.index]));
+                }
+            }
+        }
+        LOG.info("OpenAPI Bundler: merged {} duplicate schemas, {} name collisions", removed, collisions.size());
+    }
+
+    /**
+     * Partitions the schemas by shape. Schemas start grouped by their own content, references left out, and groups
+     * are split by the groups of their reference targets until no group splits anymore, which also handles
+     * recursive schemas.
+     *
+     * @return the shape of each candidate, by index
+     */
+    private int[] shapes() {
+
+        int count = candidates.size();
+        String[] content = new String[count];
+        int[][] targets = new int[count][];
+        for (int i = 0; i < count; i++) {
+            List<Object> refs = new ArrayList<>();
+            content[i] = hash(candidates.get(i).schema, refs);
+            targets[i] = new int[refs.size()];
+            for (int r = 0; r < refs.size(); r++) {
+                Candidate target = byShape.get(refs.get(r));
+                targets[i][r] = target == null ? -1 : target.index;
+            }
+        }
+
+        int[] shapes = group(content);
+        int groups = distinct(shapes);
+        while (true) {
+            String[] signatures = new String[count];
+            for (int i = 0; i < count; i++) {
+                int[] targetShapes = new int[targets[i].length];
+                for (int r = 0; r < targetShapes.length; r++) {
+                    targetShapes[r] = targets[i][r] < 0 ? -1 : shapes[targets[i][r]];
+                }
+                signatures[i] = shapes[i] + Arrays.toString(targetShapes);
+            }
+            int[] refined = group(signatures);
+            int refinedGroups = distinct(refined);
+            shapes = refined;
+            if (refinedGroups == groups) {
+                return shapes;
+            }
+            groups = refinedGroups;
+        }
+    }
+
+    private static int[] group(String[] keys) {
+
+        Map<String, Integer> ids = new HashMap<>();
+        int[] groups = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            groups[i] = ids.computeIfAbsent(keys[i], k -> ids.size());
+        }
+        return groups;
+    }
+
+    private static int distinct(int[] groups) {
+
+        return (int) Arrays.stream(groups).distinct().count();
+    }
+
+    /**
+     * Hashes the canonical form of a schema: map keys are sorted, and recorded references are replaced by a marker
+     * and collected in order.
+     */
+    private String hash(Object schema, List<Object> refs) {
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            canonical(schema, digest, refs, Collections.newSetFromMap(new IdentityHashMap<>()));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new BundlerException("SHA-256 is not available", e);
+        }
+    }
+
+    private void canonical(Object node, MessageDigest digest, List<Object> refs, Set<Object> path) {
+
+        if (node instanceof Map) {
+            Object target = references.get(node);
+            if (target != null) {
+                update(digest, "R");
+                refs.add(target);
+                return;
+            }
+            if (!path.add(node)) {
+                update(digest, "C");
+                return;
+            }
+            Map<Object, Object> map = BundlerProcessor.castIt(node);
+            Map<String, Object> mapping = mappings.get(node);
+            List<Map.Entry<Object, Object>> entries = new ArrayList<>(map.entrySet());
+            entries.sort((a, b) -> String.valueOf(a.getKey()).compareTo(String.valueOf(b.getKey())));
+            update(digest, "{");
+            for (Map.Entry<Object, Object> e : entries) {
+                update(digest, "K" + e.getKey());
+                Object mapped = mapping == null ? null : mapping.get(String.valueOf(e.getKey()));
+                if (mapped != null) {
+                    update(digest, "R");
+                    refs.add(mapped);
+                } else {
+                    canonical(e.getValue(), digest, refs, path);
+                }
+            }
+            update(digest, "}");
+            path.remove(node);
+        } else if (node instanceof List) {
+            if (!path.add(node)) {
+                update(digest, "C");
+                return;
+            }
+            update(digest, "[");
+            for (Object o : (List<?>) node) {
+                canonical(o, digest, refs, path);
+            }
+            update(digest, "]");
+            path.remove(node);
+        } else {
+            update(digest, node == null ? "N" : node.getClass().getSimpleName() + ":" + node);
+        }
+    }
+
+    private static void update(MessageDigest digest, String token) {
+
+        byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+        // length prefix, so that tokens cannot run into each other
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+    }
+
+    private static class Candidate {
+
+        private final int index;
+        private final String name;
+        private final Object schema;
+        private final Path file;
+
+        Candidate(int index, String name, Object schema, Path file) {
+
+            this.index = index;
+            this.name = name;
+            this.schema = schema;
+            this.file = file;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.networknt.openapi;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dependencies of bundled specs, as found by the processor while it resolves references:
+ *
+ * <ul>
+ * <li>for each spec, every file its bundle is built from</li>
+ * <li>for each file, the files it references</li>
+ * <li>for each referenced entry, e.g. <code>models.yaml#/Pet</code>, the entries it references; references made
+ * directly by a spec start from the spec itself</li>
+ * </ul>
+ *
+ * Files are named relative to the base directory when they are below it, and after their location, e.g. their URL,
+ * when they are not local. Graphs of several specs can be merged, and queried for the specs affected by changed files.
+ */
+public class DependencyGraph {
+
+    private final Path baseDir;
+
+    private final SortedMap<String, SortedSet<String>> specs = new TreeMap<>();
+    private final SortedMap<String, SortedSet<String>> files = new TreeMap<>();
+    private final SortedMap<String, SortedSet<String>> references = new TreeMap<>();
+    private final SortedSet<String> failed = new TreeSet<>();
+
+    // names of local copies of files that are not local, e.g. downloaded ones
+    private final Map<Path, String> locations = new ConcurrentHashMap<>();
+
+    /**
+     * @param baseDir the directory files are named relative to
+     */
+    public DependencyGraph(Path baseDir) {
+
+        this.baseDir = baseDir.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Names a file, or an entry of a file when a pointer is given.
+     *
+     * @param file the file
+     * @param pointer the pointer in the file, e.g. <code>#/Pet</code>, or null
+     * @return the name of the node
+     */
+    String node(Path file, String pointer) {
+
+        Path p = file.toAbsolutePath().normalize();
+        String name = locations.get(p);
+        if (name == null) {
+            name = (p.startsWith(baseDir) ? baseDir.relativize(p) : p).toString().replace(File.separatorChar, '/');
+        }
+        return pointer == null ? name : name + pointer;
+    }
+
+    /**
+     * Names a local copy of a file after its location, e.g. its URL.
+     *
+     * @param copy the local copy
+     * @param location the location of the file
+     */
+    void addLocation(Path copy, URI location) {
+
+        locations.put(copy.toAbsolutePath().normalize(), location.toString());
+    }
+
+    synchronized void addSpec(Path spec, Collection<Path> dependencies) {
+
+        SortedSet<String> names = specs.computeIfAbsent(node(spec, null), k -> new TreeSet<>());
+        dependencies.forEach(d -> names.add(node(d, null)));
+    }
+
+    synchronized void addFile(Path from, Path to) {
+
+        files.computeIfAbsent(node(from, null), k -> new TreeSet<>()).add(node(to, null));
+    }
+
+    synchronized void addReference(String from, String to) {
+
+        references.computeIfAbsent(from, k -> new TreeSet<>()).add(to);
+    }
+
+    /**
+     * Records a spec whose dependencies could not all be found, e.g. because a referenced file is missing.
+     *
+     * @param spec the spec
+     */
+    synchronized void addFailed(Path spec) {
+
+        failed.add(node(spec, null));
+    }
+
+    /**
+     * Adds the nodes and edges of another graph to this one.
+     *
+     * @param other the graph to merge
+     */
+    public synchronized void addAll(DependencyGraph other) {
+
+        synchronized (other) {
+            merge(specs, other.specs);
+            merge(files, other.files);
+            merge(references, other.references);
+            failed.addAll(other.failed);
+        }
+    }
+
+    /**
+     * @return the specs of the graph
+     */
+    public synchronized Set<String> getSpecs() {
+
+        return new TreeSet<>(specs.keySet());
+    }
+
+    /**
+     * Lists the specs to bundle again when some files change: those built from any of the files, and those whose
+     * dependencies could not all be found, as they may depend on the files too.
+     *
+     * @param changed the changed files
+     * @return the affected specs, sorted
+     */
+    public synchronized SortedSet<String> affected(Collection<Path> changed) {
+
+        Set<String> names = new TreeSet<>();
+        changed.forEach(c -> names.add(node(c, null)));
+        SortedSet<String> affected = new TreeSet<>(failed);
+        for (Map.Entry<String, SortedSet<String>> e : specs.entrySet()) {
+            for (String name : names) {
+                if (e.getValue().contains(name)) {
+                    affected.add(e.getKey());
+                    break;
+                }
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * @return the graph as maps and lists, to be written as JSON
+     */
+    public synchronized Map<String, Object> toMap() {
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("specs", copy(specs));
+        map.put("files", copy(files));
+        map.put("references", copy(references));
+        map.put("failed", new ArrayList<>(failed));
+        return map;
+    }
+
+    /**
+     * Writes the graph in the DOT format of Graphviz.
+     *
+     * @param out where to write
+     * @param entries true to write the references between entries, false for the references between files
+     * @throws IOException if writing fails
+     */
+    public synchronized void writeDot(Appendable out, boolean entries) throws IOException {
+
+        out.append("digraph dependencies {\n");
+        out.append("  rankdir=LR;\n");
+        out.append("  node [shape=box];\n");
+        for (String spec : specs.keySet()) {
+            out.append("  ").append(quote(spec)).append(" [style=bold];\n");
+        }
+        for (Map.Entry<String, SortedSet<String>> e : (entries ? references : files).entrySet()) {
+            for (String to : e.getValue()) {
+                out.append("  ").append(quote(e.getKey())).append(" -> ").append(quote(to)).append(";\n");
+            }
+        }
+        out.append("}\n");
+    }
+
+    private static void merge(SortedMap<String, SortedSet<String>> target, SortedMap<String, SortedSet<String>> source) {
+
+        source.forEach((k, v) -> target.computeIfAbsent(k, n -> new TreeSet<>()).addAll(v));
+    }
+
+    private static Map<String, List<String>> copy(SortedMap<String, SortedSet<String>> edges) {
+
+        Map<String, List<String>> copy = new LinkedHashMap<>();
+        edges.forEach((k, v) -> copy.put(k, new ArrayList<>(v)));
+        return copy;
+    }
+
+    private static String quote(String name) {
+
+        return "\"" + name.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
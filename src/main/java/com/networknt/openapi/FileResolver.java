@@ -0,0 +1,18 @@
+package com.networknt.openapi;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Resolves <code>file:</code> locations, the files themselves. References written as relative paths are resolved
+ * against the directory of the referencing file without going through resolvers.
+ */
+public class FileResolver implements ReferenceResolver {
+
+    @Override
+    public Path resolve(URI location) {
+
+        return "file".equalsIgnoreCase(location.getScheme()) ? Paths.get(location) : null;
+    }
+}
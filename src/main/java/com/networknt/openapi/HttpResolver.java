@@ -0,0 +1,271 @@
+package com.networknt.openapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves <code>http:</code> and <code>https:</code> locations, keeping what it downloads in a cache directory
+ * that outlives the run:
+ *
+ * <ul>
+ * <li><code>content/</code>, a {@link ContentStore} of the downloaded files</li>
+ * <li><code>index/</code>, a small JSON record per URL with the hash of its content and the <code>ETag</code> and
+ * <code>Last-Modified</code> headers it was served with</li>
+ * </ul>
+ *
+ * A cached URL is revalidated with a conditional request, and only downloaded again when the server reports a
+ * change. Within the max age the cached content is used without asking the server, and it is also used when the
+ * server cannot be reached. A resolver can be shared by concurrent and long-running processors: a URL resolved
+ * within the max age is not looked up again, and concurrent lookups of the same URL share one request.
+ */
+public class HttpResolver implements ReferenceResolver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpResolver.class);
+    private static final ObjectMapper mapper = BundlerCodec.getDefault().getJsonMapper();
+
+    private static final String URL = "url";
+    private static final String HASH = "sha256";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+    private static final String CHECKED = "checked";
+
+    private final ContentStore store;
+    private final Path index;
+    private final HttpClient client;
+
+    private final ConcurrentMap<URI, Resolution> resolved = new ConcurrentHashMap<>();
+
+    private Duration maxAge = Duration.ZERO;
+    private Duration timeout = Duration.ofSeconds(30);
+    private long maxBytes = Long.MAX_VALUE;
+
+    /**
+     * @param cacheDir the cache directory, created when the first file is downloaded
+     */
+    public HttpResolver(Path cacheDir) {
+
+        this(cacheDir, HttpClient.newBuilder()
+                                 .followRedirects(HttpClient.Redirect.NORMAL)
+                                 .connectTimeout(Duration.ofSeconds(10))
+                                 .build());
+    }
+
+    /**
+     * @param cacheDir the cache directory, created when the first file is downloaded
+     * @param client the client sending the requests
+     */
+    public HttpResolver(Path cacheDir, HttpClient client) {
+
+        this.store = new ContentStore(cacheDir.resolve("content"));
+        this.index = cacheDir.toAbsolutePath().normalize().resolve("index");
+        this.client = client;
+    }
+
+    /**
+     * @param maxAge how long a cached URL is used without revalidating it. Default: zero, revalidated on each run
+     */
+    public void setMaxAge(Duration maxAge) {
+
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * @param timeout maximum time of a request. Default: 30 seconds
+     */
+    public void setTimeout(Duration timeout) {
+
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param maxBytes maximum size of a downloaded file, checked while it is downloaded; a larger file fails with a
+     * {@link BundlerLimitException}. Default: no limit
+     */
+    public void setMaxBytes(long maxBytes) {
+
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public Path resolve(URI location) throws IOException {
+
+        String scheme = location.getScheme();
+        if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) {
+            return null;
+        }
+        Resolution resolution = new Resolution();
+        Resolution existing = resolved.compute(location, (k, r) -> r == null || isExpired(r) ? resolution : r);
+        if (existing == resolution) {
+            try {
+                Path p = fetch(location);
+                resolution.resolvedAt = System.currentTimeMillis();
+                resolution.future.complete(p);
+            } catch (IOException | RuntimeException e) {
+                // not remembered, a later reference tries again
+                resolved.remove(location, resolution);
+                resolution.future.completeExceptionally(e);
+            }
+        }
+        try {
+            return existing.future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    private Path fetch(URI location) throws IOException {
+
+        Path entryFile = index.resolve(ContentStore.hash(location.toString()) + ".json");
+        Map<String, Object> entry = readEntry(entryFile);
+        Path cached = entry == null ? null : store.get(String.valueOf(entry.get(HASH)));
+        if (cached != null && isFresh(entry)) {
+            LOG.debug("OpenAPI Bundler: using cached {}", location);
+            return cached;
+        }
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(location).timeout(timeout).GET();
+        if (cached != null) {
+            if (entry.get(ETAG) != null) {
+                request.header("If-None-Match", entry.get(ETAG).toString());
+            }
+            if (entry.get(LAST_MODIFIED) != null) {
+                request.header("If-Modified-Since", entry.get(LAST_MODIFIED).toString());
+            }
+        }
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading " + location);
+        } catch (IOException e) {
+            if (cached == null) {
+                throw e;
+            }
+            LOG.warn("OpenAPI Bundler: {} cannot be reached, using the cached copy: {}", location, e.toString());
+            return cached;
+        }
+
+        try (InputStream body = response.body()) {
+            int status = response.statusCode();
+            if (status == 304 && cached != null) {
+                LOG.debug("OpenAPI Bundler: {} is unchanged", location);
+                entry.put(CHECKED, System.currentTimeMillis());
+                writeEntry(entryFile, entry);
+                return cached;
+            }
+            if (status == 404 || status == 410) {
+                throw new NoSuchFileException(location.toString());
+            }
+            if (status != 200) {
+                throw new IOException("Unexpected HTTP status " + status + " loading " + location);
+            }
+            if (response.headers().firstValueAsLong("Content-Length").orElse(0) > maxBytes) {
+                throw new BundlerLimitException("Limit of " + maxBytes + " bytes exceeded loading " + location);
+            }
+            Path content = store.put(read(body, location));
+            LOG.debug("OpenAPI Bundler: downloaded {} to {}", location, content);
+            Map<String, Object> updated = new LinkedHashMap<>();
+            updated.put(URL, location.toString());
+            updated.put(HASH, store.hashOf(content));
+            updated.put(ETAG, response.headers().firstValue("ETag").orElse(null));
+            updated.put(LAST_MODIFIED, response.headers().firstValue("Last-Modified").orElse(null));
+            updated.put(CHECKED, System.currentTimeMillis());
+            writeEntry(entryFile, updated);
+            return content;
+        }
+    }
+
+    /**
+     * Reads a response body, failing as soon as it exceeds the maximum size, whatever its announced length.
+     */
+    private byte[] read(InputStream body, URI location) throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n = body.read(buffer); n != -1; n = body.read(buffer)) {
+            if (out.size() + (long) n > maxBytes) {
+                throw new BundlerLimitException("Limit of " + maxBytes + " bytes exceeded loading " + location);
+            }
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Tells whether a URL was resolved longer than the max age ago, and must be looked up again.
+     */
+    private boolean isExpired(Resolution resolution) {
+
+        long resolvedAt = resolution.resolvedAt;
+        return resolvedAt != 0 && System.currentTimeMillis() - resolvedAt >= maxAge.toMillis();
+    }
+
+    private boolean isFresh(Map<String, Object> entry) {
+
+        Object checked = entry.get(CHECKED);
+        return !maxAge.isZero() && checked instanceof Number
+               && System.currentTimeMillis() - ((Number) checked).longValue() < maxAge.toMillis();
+    }
+
+    private static Map<String, Object> readEntry(Path entryFile) {
+
+        if (!Files.exists(entryFile)) {
+            return null;
+        }
+        try {
+            return BundlerProcessor.castIt(mapper.readValue(entryFile.toFile(), Map.class));
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("OpenAPI Bundler: ignoring unreadable cache entry {}", entryFile, e);
+            return null;
+        }
+    }
+
+    private static void writeEntry(Path entryFile, Map<String, Object> entry) throws IOException {
+
+        Files.createDirectories(entryFile.getParent());
+        Path tmp = Files.createTempFile(entryFile.getParent(), entryFile.getFileName().toString(), ".tmp");
+        try {
+            mapper.writeValue(tmp.toFile(), entry);
+            try {
+                Files.move(tmp, entryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, entryFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static class Resolution {
+
+        private final CompletableFuture<Path> future = new CompletableFuture<>();
+
+        // when the URL was resolved, 0 while it is being resolved
+        private volatile long resolvedAt;
+    }
+}
@@ -0,0 +1,343 @@
+package com.networknt.openapi;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.CollectionEndEvent;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.NodeEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+/**
+ * A parsed file whose top level entries are parsed on first access. The file is scanned once to find where each top
+ * level value starts and ends, without building it, so that a pointer like <code>models.yaml#/Pet</code> into a
+ * large shared file only parses the part it points to.
+ *
+ * Looking up, adding or removing a key works on the index; anything that iterates the entries parses all of them
+ * first, so the document behaves as the fully parsed map it stands for.
+ */
+final class LazyDocument extends AbstractMap<String, Object> {
+
+    private static final Resolver RESOLVER = new Resolver();
+
+    private final Source source;
+
+    // parsed values, or the slice of the source holding them
+    private final Map<String, Object> entries;
+
+    private LazyDocument(Source source, Map<String, Object> entries) {
+
+        this.source = source;
+        this.entries = entries;
+    }
+
+    /**
+     * Indexes a JSON document.
+     *
+     * @param buffer the content of the file, read from its current position
+     * @param mapper the mapper parsing the values
+     * @return the document, or null if the root is not an object
+     * @throws IOException if the document is not well formed
+     */
+    static LazyDocument json(ByteBuffer buffer, ObjectMapper mapper) throws IOException {
+
+        ByteBuffer content = buffer.slice();
+        Map<String, Object> entries = new LinkedHashMap<>();
+        try (JsonParser parser = mapper.getFactory().createParser(new BufferInputStream(content.duplicate()))) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = parser.currentName();
+                parser.nextToken();
+                long start = parser.currentTokenLocation().getByteOffset();
+                if (parser.currentToken().isStructStart()) {
+                    parser.skipChildren();
+                } else {
+                    parser.finishToken();
+                }
+                entries.put(key, new Slice((int) start, (int) parser.currentLocation().getByteOffset()));
+            }
+        }
+        return new LazyDocument(new JsonSource(content, mapper), entries);
+    }
+
+    /**
+     * Indexes a YAML document from its parse events.
+     *
+     * @param text the content of the file
+     * @param yaml the parser of the calling thread
+     * @return the document, or null if it cannot be split safely: the root is not a mapping, a key is not a plain
+     * string, or anchors and aliases may tie entries together
+     */
+    static LazyDocument yaml(String text, Supplier<Yaml> yaml) {
+
+        Map<String, Object> entries = new LinkedHashMap<>();
+        Offsets offsets = new Offsets(text);
+        int depth = 0;
+        int documents = 0;
+        String key = null;
+        int start = 0;
+        for (Event event : yaml.get().parse(new StringReader(text))) {
+            if (event instanceof AliasEvent
+                    || event instanceof NodeEvent && ((NodeEvent) event).getAnchor() != null) {
+                return null;
+            }
+            if (event instanceof DocumentStartEvent && ++documents > 1) {
+                return null;
+            }
+            if (depth == 0 && event instanceof CollectionStartEvent && !(event instanceof MappingStartEvent)) {
+                return null;
+            }
+            if (depth == 0 && event instanceof ScalarEvent) {
+                return null;
+            }
+            if (depth == 1 && key == null && event instanceof ScalarEvent) {
+                ScalarEvent scalar = (ScalarEvent) event;
+                if (!isStringKey(scalar)) {
+                    return null;
+                }
+                key = scalar.getValue();
+                start = offsets.of(event.getStartMark().getIndex());
+            } else if (depth == 1 && key == null && event instanceof CollectionStartEvent) {
+                // complex key
+                return null;
+            } else if (depth == 1 && event instanceof ScalarEvent) {
+                entries.put(key, new Slice(start, offsets.of(event.getEndMark().getIndex())));
+                key = null;
+            }
+            if (event instanceof CollectionStartEvent) {
+                depth++;
+            } else if (event instanceof CollectionEndEvent) {
+                depth--;
+                if (depth == 1) {
+                    entries.put(key, new Slice(start, offsets.of(event.getEndMark().getIndex())));
+                    key = null;
+                }
+            }
+        }
+        return documents == 1 ? new LazyDocument(new YamlSource(text, yaml), entries) : null;
+    }
+
+    /**
+     * @return a document sharing the source and index of this one, with its own copy of the values parsed so far
+     */
+    LazyDocument copy() {
+
+        Map<String, Object> copies = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> e : entries.entrySet()) {
+            Object value = e.getValue();
+            copies.put(e.getKey(), value instanceof Slice ? value : ReferenceCache.copy(value));
+        }
+        return new LazyDocument(source, copies);
+    }
+
+    /**
+     * @return true if the value of the key was parsed
+     */
+    boolean isParsed(String key) {
+
+        return entries.containsKey(key) && !(entries.get(key) instanceof Slice);
+    }
+
+    @Override
+    public Object get(Object key) {
+
+        Object value = entries.get(key);
+        if (value instanceof Slice) {
+            value = source.parse((Slice) value);
+            entries.put((String) key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+
+        Object previous = get(key);
+        entries.put(key, value);
+        return previous;
+    }
+
+    @Override
+    public Object remove(Object key) {
+
+        Object previous = get(key);
+        entries.remove(key);
+        return previous;
+    }
+
+    @Override
+    public int size() {
+
+        return entries.size();
+    }
+
+    @Override
+    public Set<String> keySet() {
+
+        return entries.keySet();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+
+        for (String key : entries.keySet()) {
+            get(key);
+        }
+        return entries.entrySet();
+    }
+
+    private static boolean isStringKey(ScalarEvent key) {
+
+        if (key.getTag() != null) {
+            return false;
+        }
+        if (key.getScalarStyle() != DumperOptions.ScalarStyle.PLAIN) {
+            return true;
+        }
+        // plain keys such as 200 or true are not strings once parsed
+        return RESOLVER.resolve(NodeId.scalar, key.getValue(), true).equals(Tag.STR);
+    }
+
+    private interface Source {
+
+        Object parse(Slice slice);
+    }
+
+    private static class JsonSource implements Source {
+
+        private final ByteBuffer content;
+        private final ObjectMapper mapper;
+
+        JsonSource(ByteBuffer content, ObjectMapper mapper) {
+
+            this.content = content;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public Object parse(Slice slice) {
+
+            try (InputStream in = new BufferInputStream(content.slice(slice.start, slice.end - slice.start))) {
+                return mapper.readValue(in, Object.class);
+            } catch (IOException e) {
+                throw new BundlerException("Unable to parse the entry at byte " + slice.start, e);
+            }
+        }
+    }
+
+    private static class YamlSource implements Source {
+
+        private final String text;
+        private final Supplier<Yaml> yaml;
+
+        YamlSource(String text, Supplier<Yaml> yaml) {
+
+            this.text = text;
+            this.yaml = yaml;
+        }
+
+        @Override
+        public Object parse(Slice slice) {
+
+            // the slice is the entry, key included, so that it is parsed with its own indentation
+            Map<Object, Object> entry = yaml.get().load(text.substring(slice.start, slice.end));
+            return entry.values().iterator().next();
+        }
+    }
+
+    private static class Slice {
+
+        private final int start;
+        private final int end;
+
+        Slice(int start, int end) {
+
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Converts the code point indexes of YAML marks into string indexes, moving forward only.
+     */
+    private static class Offsets {
+
+        private final String text;
+        private int codePoints;
+        private int chars;
+
+        Offsets(String text) {
+
+            this.text = text;
+        }
+
+        int of(int codePointIndex) {
+
+            chars = text.offsetByCodePoints(chars, codePointIndex - codePoints);
+            codePoints = codePointIndex;
+            return chars;
+        }
+    }
+
+    /**
+     * Reads a buffer, such as a mapped file, without copying it to the heap first.
+     */
+    static class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+
+            return buffer.remaining();
+        }
+    }
+}
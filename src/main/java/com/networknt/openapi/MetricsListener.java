@@ -0,0 +1,15 @@
+package com.networknt.openapi;
+
+/**
+ * Receives the metrics of every bundling done by a processor. In batch mode, a listener is called concurrently from
+ * the threads bundling the specs.
+ */
+public interface MetricsListener {
+
+    /**
+     * Called once a spec is bundled, written and validated, or skipped in incremental mode.
+     *
+     * @param metrics the metrics of the bundling
+     */
+    void bundled(BundlerMetrics metrics);
+}
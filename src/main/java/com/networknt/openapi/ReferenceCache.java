@@ -0,0 +1,443 @@
+package com.networknt.openapi;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thread-safe cache of parsed reference files, keyed by normalized path, that can be shared by several
+ * {@link BundlerProcessor} instances. Each file is parsed at most once, even when requested concurrently.
+ *
+ * The bundler rewrites the trees it loads in place, so the cache hands out a deep copy of the parsed tree to every
+ * caller and keeps the original untouched.
+ *
+ * By default the cache is unbounded and files are assumed not to change while it is in use. A long-lived cache can
+ * be bounded in number of files and total file size, the least recently used files being evicted first, and can
+ * check the modification time of a file on every access to parse it again when it changed.
+ */
+public class ReferenceCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReferenceCache.class);
+
+    // in access order, guarded by itself; files are parsed outside of the lock
+    private final Map<Path, Entry> files = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final BundlerCodec codec;
+
+    private int maxFiles = Integer.MAX_VALUE;
+    private long maxBytes = Long.MAX_VALUE;
+    private boolean checkModified = false;
+
+    // total size of the cached files, guarded by files
+    private long bytes;
+
+    public ReferenceCache() {
+
+        this(BundlerCodec.getDefault());
+    }
+
+    /**
+     * @param codec the codec files are parsed with
+     */
+    public ReferenceCache(BundlerCodec codec) {
+
+        this.codec = codec;
+    }
+
+    /**
+     * Returns a private copy of the parsed content of the given file, parsing it on first access.
+     *
+     * @param path the file to load
+     * @param <T> generic
+     * @return deep copy of the parsed file
+     * @throws IOException if the file cannot be read
+     */
+    public <T> T load(Path path) throws IOException {
+
+        return BundlerProcessor.castIt(copy(parsed(path.toAbsolutePath().normalize()).future.join()));
+    }
+
+    /**
+     * Loads a file like {@link #load(Path)}, and records the content hash of the bytes it was parsed from.
+     *
+     * @param path the file to load
+     * @param digests the hashes to record into, by path as given
+     */
+    <T> T load(Path path, Map<Path, String> digests) throws IOException {
+
+        Entry entry = parsed(path.toAbsolutePath().normalize());
+        Object result = copy(entry.future.join());
+        digests.put(path, entry.digest);
+        return BundlerProcessor.castIt(result);
+    }
+
+    /**
+     * @return number of files currently held by the cache
+     */
+    public int size() {
+
+        synchronized (files) {
+            return files.size();
+        }
+    }
+
+    /**
+     * @return total size in bytes of the files currently held by the cache
+     */
+    public long bytes() {
+
+        synchronized (files) {
+            return bytes;
+        }
+    }
+
+    /**
+     * Drops a file from the cache, so that it is parsed again on next access.
+     *
+     * @param path the file that changed
+     */
+    public void invalidate(Path path) {
+
+        synchronized (files) {
+            remove(path.toAbsolutePath().normalize(), null);
+        }
+    }
+
+    public void clear() {
+
+        synchronized (files) {
+            files.clear();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * @param maxFiles maximum number of files held, the least recently used ones are evicted beyond it
+     */
+    public void setMaxFiles(int maxFiles) {
+
+        this.maxFiles = maxFiles;
+    }
+
+    /**
+     * @param maxBytes maximum total size of the files held, the least recently used ones are evicted beyond it
+     */
+    public void setMaxBytes(long maxBytes) {
+
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Enables checking the modification time of a file on every access, to parse it again when it changed since it
+     * was cached. Meant for caches that outlive a single bundling.
+     *
+     * @param checkModified true to check modification times
+     */
+    public void setCheckModified(boolean checkModified) {
+
+        this.checkModified = checkModified;
+    }
+
+    /**
+     * Discovers the external files reachable through <code>$ref</code> from a parsed tree and parses all of them
+     * in parallel, so that later {@link #load(Path)} calls are served from the cache. Files that cannot be loaded
+     * are skipped here; the error surfaces when the bundler loads them.
+     *
+     * @param dir the directory relative references of the tree are resolved against
+     * @param tree the parsed tree to start from
+     * @param executor the executor the files are parsed on
+     */
+    public void prefetch(Path dir, Object tree, Executor executor) {
+
+        prefetch(dir, null, tree, executor);
+    }
+
+    /**
+     * Prefetches the external files of a tree that are below a root directory, see
+     * {@link #prefetch(Path, Object, Executor)}.
+     *
+     * @param dir the directory relative references of the tree are resolved against
+     * @param rootDir the directory files are prefetched from, null for any
+     * @param tree the parsed tree to start from
+     * @param executor the executor the files are parsed on
+     */
+    public void prefetch(Path dir, Path rootDir, Object tree, Executor executor) {
+
+        Set<Path> seen = ConcurrentHashMap.newKeySet();
+        AtomicInteger pending = new AtomicInteger(1);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        Path root = rootDir == null ? null : rootDir.toAbsolutePath().normalize();
+        discover(dir.toAbsolutePath().normalize(), root, tree, executor, seen, pending, done);
+        if (pending.decrementAndGet() == 0) {
+            done.complete(null);
+        }
+        done.join();
+    }
+
+    private void discover(Path dir, Path root, Object tree, Executor executor, Set<Path> seen, AtomicInteger pending,
+                          CompletableFuture<Void> done) {
+
+        for (String file : externalFiles(tree)) {
+            Path p = dir.resolve(file).normalize();
+            if (root != null && !p.startsWith(root) || !seen.add(p)) {
+                continue;
+            }
+            pending.incrementAndGet();
+            entry(p, executor).future.whenComplete((parsed, error) -> {
+                try {
+                    if (error == null && !(parsed instanceof LazyDocument)) {
+                        // large files are parsed on demand, walking them here would parse them in full
+                        discover(p.getParent(), root, parsed, executor, seen, pending, done);
+                    } else {
+                        LOG.debug("Prefetch of {} failed", p, error);
+                    }
+                } finally {
+                    if (pending.decrementAndGet() == 0) {
+                        done.complete(null);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Collects the file part of every external <code>$ref</code> and discriminator mapping in a tree.
+     */
+    static Set<String> externalFiles(Object tree) {
+
+        Set<String> files = new LinkedHashSet<>();
+        Deque<Object> stack = new ArrayDeque<>();
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        stack.push(tree);
+        while (!stack.isEmpty()) {
+            Object node = stack.pop();
+            if (!visited.add(node)) {
+                continue;
+            }
+            if (node instanceof Map) {
+                Map<Object, Object> map = BundlerProcessor.castIt(node);
+                for (Map.Entry<Object, Object> e : map.entrySet()) {
+                    Object value = e.getValue();
+                    if ("$ref".equals(e.getKey()) && value instanceof String) {
+                        addFile(files, (String) value);
+                    } else if ("mapping".equals(e.getKey()) && value instanceof Map) {
+                        Map<Object, Object> mapping = BundlerProcessor.castIt(value);
+                        mapping.values().forEach(v -> addFile(files, String.valueOf(v)));
+                    } else if (value instanceof Map || value instanceof List) {
+                        stack.push(value);
+                    }
+                }
+            } else if (node instanceof List) {
+                for (Object o : (List<?>) node) {
+                    if (o instanceof Map || o instanceof List) {
+                        stack.push(o);
+                    }
+                }
+            }
+        }
+        return files;
+    }
+
+    private static void addFile(Set<String> files, String pointer) {
+
+        int hashIndex = pointer.indexOf('#');
+        String file = hashIndex < 0 ? pointer : pointer.substring(0, hashIndex);
+        if (!file.isEmpty()) {
+            files.add(file);
+        }
+    }
+
+    /**
+     * @return the entry of a file, once parsed
+     */
+    private Entry parsed(Path path) throws IOException {
+
+        Entry entry = entry(path, null);
+        try {
+            entry.future.join();
+            return entry;
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new BundlerException("Unable to load reference file " + path, cause);
+        }
+    }
+
+    /**
+     * Returns the entry of a file, with its pending or completed parse, starting it if nobody did yet. Without an
+     * executor the file is parsed in the calling thread.
+     */
+    private Entry entry(Path path, Executor executor) {
+
+        BasicFileAttributes attributes = checkModified || maxBytes != Long.MAX_VALUE ? attributes(path) : null;
+        FileTime modified = checkModified && attributes != null ? attributes.lastModifiedTime() : null;
+        Entry entry;
+        synchronized (files) {
+            Entry existing = files.get(path);
+            if (existing != null && (!checkModified || existing.isCurrent(modified))) {
+                return existing;
+            }
+            if (existing != null) {
+                LOG.debug("OpenAPI Bundler: {} was modified, parsing it again", path);
+                remove(path, existing);
+            }
+            entry = new Entry(modified, attributes == null ? 0 : attributes.size());
+            files.put(path, entry);
+            bytes += entry.size;
+            evict();
+        }
+        CompletableFuture<Object> loading = entry.future;
+        Runnable parse = () -> {
+            try {
+                MessageDigest digest = BundleCache.newDigest();
+                Object parsed = codec.readReference(path, digest);
+                entry.digest = BundleCache.hex(digest);
+                loading.complete(parsed);
+            } catch (IOException | RuntimeException e) {
+                // do not keep failures around, the next caller retries
+                synchronized (files) {
+                    remove(path, entry);
+                }
+                loading.completeExceptionally(e);
+            }
+        };
+        if (executor == null) {
+            parse.run();
+        } else {
+            executor.execute(parse);
+        }
+        return entry;
+    }
+
+    /**
+     * Removes a file, only if it is still cached as the given entry when one is given. Must hold the lock.
+     */
+    private void remove(Path path, Entry entry) {
+
+        Entry existing = files.get(path);
+        if (existing != null && (entry == null || existing == entry)) {
+            files.remove(path);
+            bytes -= existing.size;
+        }
+    }
+
+    /**
+     * Evicts the least recently used files until the cache is within its bounds, always keeping the most recent
+     * one. Must hold the lock.
+     */
+    private void evict() {
+
+        Iterator<Map.Entry<Path, Entry>> it = files.entrySet().iterator();
+        while ((files.size() > maxFiles || bytes > maxBytes) && files.size() > 1) {
+            Map.Entry<Path, Entry> eldest = it.next();
+            LOG.debug("OpenAPI Bundler: evicting {} from the reference cache", eldest.getKey());
+            bytes -= eldest.getValue().size;
+            it.remove();
+        }
+    }
+
+    private static BasicFileAttributes attributes(Path path) {
+
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            // the error surfaces when the file is parsed
+            return null;
+        }
+    }
+
+    /**
+     * Deep copies a parsed YAML tree. Identity is preserved for shared and self-referencing nodes, as produced by
+     * YAML anchors and aliases. The tree is walked with an explicit stack, so deeply nested files do not overflow the
+     * Java stack.
+     */
+    static Object copy(Object value) {
+
+        Map<Object, Object> copies = new IdentityHashMap<>();
+        // maps and lists whose copy is created but not filled yet
+        Deque<Object> pending = new ArrayDeque<>();
+        Object root = shallowCopy(value, copies, pending);
+        while (!pending.isEmpty()) {
+            Object source = pending.pop();
+            if (source instanceof Map) {
+                Map<Object, Object> target = BundlerProcessor.castIt(copies.get(source));
+                for (Map.Entry<?, ?> e : ((Map<?, ?>) source).entrySet()) {
+                    target.put(e.getKey(), shallowCopy(e.getValue(), copies, pending));
+                }
+            } else {
+                List<Object> target = BundlerProcessor.castIt(copies.get(source));
+                for (Object o : (List<?>) source) {
+                    target.add(shallowCopy(o, copies, pending));
+                }
+            }
+        }
+        return root;
+    }
+
+    /**
+     * @return the copy of a node, an empty map or list left to be filled for the maps and lists not copied yet
+     */
+    private static Object shallowCopy(Object value, Map<Object, Object> copies, Deque<Object> pending) {
+
+        if (!(value instanceof Map) && !(value instanceof List)) {
+            return value;
+        }
+        Object existing = copies.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        if (value instanceof LazyDocument) {
+            return ((LazyDocument) value).copy();
+        }
+        Object target = value instanceof Map ? new LinkedHashMap<>() : new ArrayList<>(((List<?>) value).size());
+        copies.put(value, target);
+        pending.push(value);
+        return target;
+    }
+
+    private static class Entry {
+
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        private final FileTime modified;
+        private final long size;
+        // hash of the bytes parsed, set before the future completes
+        private String digest;
+
+        Entry(FileTime modified, long size) {
+
+            this.modified = modified;
+            this.size = size;
+        }
+
+        boolean isCurrent(FileTime modified) {
+
+            return this.modified != null && this.modified.equals(modified);
+        }
+    }
+}
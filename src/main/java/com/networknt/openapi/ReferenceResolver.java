@@ -0,0 +1,24 @@
+package com.networknt.openapi;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+
+/**
+ * Finds the content of a referenced file that is not a relative path on the local file system, e.g.
+ * <code>classpath:/models/pet.yaml</code> or <code>https://example.com/models/pet.yaml</code>. References are
+ * resolved by the first resolver of the processor that supports their location.
+ *
+ * The content is returned as a local file, so that it is parsed and cached like any other file, while relative
+ * references in it are resolved against its location.
+ */
+public interface ReferenceResolver {
+
+    /**
+     * @param location absolute location of the file, without fragment
+     * @return a local file holding the content, or null if the location is not supported
+     * @throws java.nio.file.NoSuchFileException if the location is supported but there is no such file
+     * @throws IOException if the content cannot be obtained
+     */
+    Path resolve(URI location) throws IOException;
+}
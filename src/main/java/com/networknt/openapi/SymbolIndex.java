@@ -0,0 +1,209 @@
+package com.networknt.openapi;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the JSON pointers of every map and list of the loaded reference files, used to resolve local pointers
+ * found in content that was extracted from those files. The index is built as files are loaded, so a lookup finds
+ * the files defining a pointer without scanning them. Files parsed on demand only have their top level keys indexed.
+ */
+class SymbolIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SymbolIndex.class);
+
+    // pointer -> files defining it, in load order
+    private final Map<String, List<Path>> pointers = new HashMap<>();
+
+    private final Map<Path, Map<String, Object>> files = new HashMap<>();
+
+    // pointers defined in several files -> those files, in the order they were found
+    private final Map<String, List<Path>> ambiguous = new LinkedHashMap<>();
+
+    /**
+     * Adds the pointers of a loaded file to the index.
+     *
+     * @param file the file
+     * @param tree the parsed content of the file
+     */
+    void add(Path file, Map<String, Object> tree) {
+
+        files.put(file, tree);
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> nodes = new ArrayDeque<>();
+        Deque<String> paths = new ArrayDeque<>();
+        nodes.push(tree);
+        paths.push("#");
+        while (!nodes.isEmpty()) {
+            Object node = nodes.pop();
+            String path = paths.pop();
+            if (!visited.add(node)) {
+                continue;
+            }
+            if (node instanceof LazyDocument) {
+                // iterating the entries would parse them
+                for (String key : ((LazyDocument) node).keySet()) {
+                    index(BundleIndex.child(path, key), file);
+                }
+            } else if (node instanceof Map) {
+                for (Map.Entry<?, ?> e : ((Map<?, ?>) node).entrySet()) {
+                    push(e.getValue(), BundleIndex.child(path, e.getKey()), file, nodes, paths);
+                }
+            } else if (node instanceof List) {
+                List<?> list = (List<?>) node;
+                for (int i = 0; i < list.size(); i++) {
+                    push(list.get(i), BundleIndex.child(path, i), file, nodes, paths);
+                }
+            }
+        }
+    }
+
+    private void push(Object value, String path, Path file, Deque<Object> nodes, Deque<String> paths) {
+
+        if (value instanceof Map || value instanceof List) {
+            index(path, file);
+            nodes.push(value);
+            paths.push(path);
+        }
+    }
+
+    private void index(String pointer, Path file) {
+
+        pointers.computeIfAbsent(pointer, k -> new ArrayList<>(1)).add(file);
+    }
+
+    /**
+     * Resolves a local JSON pointer, e.g. <code>#/Foo</code> or <code>#/Foo/properties/bar</code>. The file the
+     * pointer appears in is searched first, then all other loaded files. If several of them define the pointer, the
+     * one loaded first wins and the ambiguity is recorded, see {@link #getAmbiguous()}.
+     *
+     * @param pointer the local pointer
+     * @param current the file the pointer appears in, may be null
+     * @return the referenced node, or null if no loaded file defines it
+     */
+    Object resolve(String pointer, Path current) {
+
+        List<String> segments = segments(pointer);
+        if (segments.isEmpty()) {
+            return null;
+        }
+        Object found = current == null ? null : descend(files.get(current), segments);
+        if (found == null) {
+            found = resolve(segments, pointer);
+        }
+        if (found == null && segments.size() > 1) {
+            // earlier versions only looked for the last segment at the top level of the files
+            found = resolve(segments.subList(segments.size() - 1, segments.size()), pointer);
+        }
+        return found;
+    }
+
+    /**
+     * @return the pointers defined in several files, with those files
+     */
+    Map<String, List<Path>> getAmbiguous() {
+
+        return Collections.unmodifiableMap(ambiguous);
+    }
+
+    private Object resolve(List<String> segments, String pointer) {
+
+        List<Path> candidates = pointers.get(pointer(segments));
+        if (candidates == null) {
+            // below the entries of files parsed on demand, or content added since the files were loaded
+            candidates = pointers.get(pointer(segments.subList(0, 1)));
+        }
+        if (candidates == null) {
+            return null;
+        }
+        Object found = null;
+        List<Path> definedIn = new ArrayList<>();
+        for (Path file : candidates) {
+            Object node = descend(files.get(file), segments);
+            if (node != null) {
+                if (found == null) {
+                    found = node;
+                }
+                definedIn.add(file);
+            }
+        }
+        if (definedIn.size() > 1 && !ambiguous.containsKey(pointer)) {
+            ambiguous.put(pointer, definedIn);
+            LOG.warn("OpenAPI Bundler: local reference {} is defined in several files {}, using {}",
+                             pointer,
+                             definedIn,
+                             definedIn.get(0));
+        }
+        return found;
+    }
+
+    private static String pointer(List<String> segments) {
+
+        String pointer = "#";
+        for (String segment : segments) {
+            pointer = BundleIndex.child(pointer, segment);
+        }
+        return pointer;
+    }
+
+    private static Object descend(Object node, List<String> path) {
+
+        for (String segment : path) {
+            if (node instanceof Map) {
+                Map<Object, Object> map = BundlerProcessor.castIt(node);
+                Object next = map.get(segment);
+                if (next == null && !(node instanceof LazyDocument)) {
+                    // keys like response codes are not strings after parsing; documents parsed on demand only
+                    // have string keys, and iterating them would parse them in full
+                    for (Map.Entry<Object, Object> e : map.entrySet()) {
+                        if (segment.equals(String.valueOf(e.getKey()))) {
+                            next = e.getValue();
+                            break;
+                        }
+                    }
+                }
+                node = next;
+            } else if (node instanceof List) {
+                List<Object> list = BundlerProcessor.castIt(node);
+                try {
+                    int index = Integer.parseInt(segment);
+                    node = index >= 0 && index < list.size() ? list.get(index) : null;
+                } catch (NumberFormatException e) {
+                    node = null;
+                }
+            } else {
+                node = null;
+            }
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Splits a pointer like <code>#/a/b~1c</code> into its unescaped segments.
+     */
+    static List<String> segments(String pointer) {
+
+        List<String> segments = new ArrayList<>();
+        String path = pointer.startsWith("#") ? pointer.substring(1) : pointer;
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(segment.replace("~1", "/").replace("~0", "~"));
+            }
+        }
+        return segments;
+    }
+}
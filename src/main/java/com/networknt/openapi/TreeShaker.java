@@ -0,0 +1,229 @@
+package com.networknt.openapi;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the components of a bundled spec that can be reached from a set of roots through local references, and
+ * removes the others. Components are named by their pointer, e.g. <code>#/components/schemas/Pet</code>.
+ */
+final class TreeShaker {
+
+    private static final String COMPONENTS = "#/components/";
+    private static final Set<String> METHODS = new HashSet<>(Arrays.asList(
+            "get", "put", "post", "delete", "options", "head", "patch", "trace"));
+
+    private TreeShaker() {
+
+    }
+
+    /**
+     * Removes the components that cannot be reached from the paths, webhooks and other top level entries of the
+     * spec. Security schemes are kept, as they are looked up by name rather than referenced.
+     *
+     * @param spec the bundled spec, updated in place
+     * @return the pointers of the removed components
+     */
+    static List<String> prune(Map<String, Object> spec) {
+
+        List<Object> roots = new ArrayList<>();
+        for (Map.Entry<String, Object> e : spec.entrySet()) {
+            if (!"components".equals(e.getKey())) {
+                roots.add(e.getValue());
+            }
+        }
+        Map<String, Object> components = BundlerProcessor.castIt(spec.get("components"));
+        if (components != null && components.get("securitySchemes") != null) {
+            roots.add(components.get("securitySchemes"));
+        }
+        Set<String> reachable = reachable(spec, roots);
+        if (components != null && components.get("securitySchemes") instanceof Map) {
+            Map<String, Object> schemes = BundlerProcessor.castIt(components.get("securitySchemes"));
+            schemes.keySet().forEach(name -> reachable.add(pointer("securitySchemes", name)));
+        }
+        return retain(spec, reachable);
+    }
+
+    /**
+     * Builds the part of a bundled spec selected by a slice: its operations, the tags they use and the components
+     * they reach. The slice shares its nodes with the spec, only the maps it filters are copied, so the spec is left
+     * as it is and can be sliced again.
+     *
+     * @param spec the bundled spec
+     * @param slice the operations to keep
+     * @return the sliced spec
+     */
+    static Map<String, Object> slice(Map<String, Object> spec, BundleSlice slice) {
+
+        Map<String, Object> sliced = new LinkedHashMap<>(spec);
+        Set<Object> tags = new HashSet<>();
+        for (String key : new String[] {"paths", "webhooks"}) {
+            if (spec.get(key) instanceof Map) {
+                sliced.put(key, operations(BundlerProcessor.castIt(spec.get(key)), slice, "paths".equals(key), tags));
+            }
+        }
+        if (spec.get("tags") instanceof List) {
+            List<Object> used = new ArrayList<>();
+            for (Object tag : (List<?>) spec.get("tags")) {
+                if (!(tag instanceof Map) || tags.contains(((Map<?, ?>) tag).get("name"))) {
+                    used.add(tag);
+                }
+            }
+            sliced.put("tags", used);
+        }
+        if (spec.get("components") instanceof Map) {
+            Map<String, Object> sections = new LinkedHashMap<>(BundlerProcessor.castIt(spec.get("components")));
+            sections.replaceAll((k, v) -> v instanceof Map ? new LinkedHashMap<>((Map<?, ?>) v) : v);
+            sliced.put("components", sections);
+        }
+        prune(sliced);
+        return sliced;
+    }
+
+    private static Map<String, Object> operations(Map<String, Object> items, BundleSlice slice, boolean paths,
+                                                  Set<Object> tags) {
+
+        Map<String, Object> kept = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> item : items.entrySet()) {
+            if (!(item.getValue() instanceof Map)) {
+                continue;
+            }
+            Map<String, Object> operations = new LinkedHashMap<>();
+            boolean selected = false;
+            for (Map.Entry<String, Object> e : BundlerProcessor.<Map<String, Object>>castIt(item.getValue()).entrySet()) {
+                if (!METHODS.contains(e.getKey())) {
+                    // summary, parameters and servers shared by the operations of the path
+                    operations.put(e.getKey(), e.getValue());
+                } else if (e.getValue() instanceof Map
+                           && slice.matches(paths ? item.getKey() : null, BundlerProcessor.castIt(e.getValue()))) {
+                    operations.put(e.getKey(), e.getValue());
+                    selected = true;
+                    Object used = BundlerProcessor.<Map<String, Object>>castIt(e.getValue()).get("tags");
+                    if (used instanceof Collection) {
+                        tags.addAll((Collection<?>) used);
+                    }
+                }
+            }
+            if (selected) {
+                kept.put(item.getKey(), operations);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Follows the local references of the given nodes, and of the components they reach.
+     *
+     * @param spec the bundled spec
+     * @param roots the nodes to start from
+     * @return the pointers of the reachable components
+     */
+    static Set<String> reachable(Map<String, Object> spec, Collection<?> roots) {
+
+        Map<String, Object> components = BundlerProcessor.castIt(spec.get("components"));
+        Set<String> reachable = new LinkedHashSet<>();
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> stack = new ArrayDeque<>();
+        roots.forEach(root -> push(stack, root));
+        while (!stack.isEmpty()) {
+            Object node = stack.pop();
+            if (!visited.add(node)) {
+                continue;
+            }
+            if (node instanceof List) {
+                ((List<?>) node).forEach(o -> push(stack, o));
+                continue;
+            }
+            Map<Object, Object> map = BundlerProcessor.castIt(node);
+            for (Map.Entry<Object, Object> e : map.entrySet()) {
+                Object value = e.getValue();
+                if ("$ref".equals(e.getKey()) && value instanceof String) {
+                    follow((String) value, components, reachable, stack);
+                } else if ("mapping".equals(e.getKey()) && value instanceof Map) {
+                    Map<Object, Object> mapping = BundlerProcessor.castIt(value);
+                    mapping.values().forEach(v -> follow(String.valueOf(v), components, reachable, stack));
+                } else {
+                    push(stack, value);
+                }
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Removes the components that are not in the given set.
+     *
+     * @param spec the bundled spec, updated in place
+     * @param reachable the pointers of the components to keep
+     * @return the pointers of the removed components
+     */
+    static List<String> retain(Map<String, Object> spec, Set<String> reachable) {
+
+        List<String> removed = new ArrayList<>();
+        Object components = spec.get("components");
+        if (!(components instanceof Map)) {
+            return removed;
+        }
+        Map<String, Object> sections = BundlerProcessor.castIt(components);
+        for (Iterator<Map.Entry<String, Object>> sit = sections.entrySet().iterator(); sit.hasNext(); ) {
+            Map.Entry<String, Object> section = sit.next();
+            if (!(section.getValue() instanceof Map) || section.getKey().startsWith("x-")) {
+                continue;
+            }
+            Map<Object, Object> entries = BundlerProcessor.castIt(section.getValue());
+            int before = removed.size();
+            for (Iterator<Object> it = entries.keySet().iterator(); it.hasNext(); ) {
+                String pointer = pointer(section.getKey(), String.valueOf(it.next()));
+                if (!reachable.contains(pointer)) {
+                    removed.add(pointer);
+                    it.remove();
+                }
+            }
+            // drop the sections emptied here, not the ones that were empty already
+            if (entries.isEmpty() && removed.size() > before) {
+                sit.remove();
+            }
+        }
+        return removed;
+    }
+
+    private static void follow(String ref, Map<String, Object> components, Set<String> reachable, Deque<Object> stack) {
+
+        if (!ref.startsWith(COMPONENTS)) {
+            return;
+        }
+        List<String> segments = SymbolIndex.segments(ref.substring(1));
+        if (segments.size() < 3) {
+            return;
+        }
+        String pointer = pointer(segments.get(1), segments.get(2));
+        if (reachable.add(pointer) && components != null && components.get(segments.get(1)) instanceof Map) {
+            Map<Object, Object> section = BundlerProcessor.castIt(components.get(segments.get(1)));
+            push(stack, section.get(segments.get(2)));
+        }
+    }
+
+    private static void push(Deque<Object> stack, Object node) {
+
+        if (node instanceof Map || node instanceof List) {
+            stack.push(node);
+        }
+    }
+
+    private static String pointer(String section, String name) {
+
+        return COMPONENTS + section + "/" + name.replace("~", "~0").replace("/", "~1");
+    }
+}
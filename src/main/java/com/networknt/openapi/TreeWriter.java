@@ -0,0 +1,131 @@
+package com.networknt.openapi;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Streams a parsed YAML/JSON tree to one or more generators in a single pass, without building an intermediate
+ * document. Maps and lists are written by the walker; other values are written the same way the
+ * {@code ObjectMapper} of the generator writes them.
+ */
+final class TreeWriter {
+
+    private TreeWriter() {
+    }
+
+    static void write(Object node, List<JsonGenerator> generators) throws IOException {
+
+        write(node, generators, null, null);
+    }
+
+    /**
+     * Writes a tree, recording the ranges of the entries of a {@link BundleIndex} in the outputs that have a
+     * recorder.
+     *
+     * @param recorders the recorder of each generator, or null for a generator without index
+     */
+    static void write(Object node, List<JsonGenerator> generators, List<BundleIndex.Recorder> recorders)
+            throws IOException {
+
+        write(node, generators, recorders, recorders.stream().anyMatch(Objects::nonNull) ? "#" : null);
+    }
+
+    // pointer is the JSON pointer of the node while indexed entries may be found at or below it, null otherwise
+    private static void write(Object node, List<JsonGenerator> generators, List<BundleIndex.Recorder> recorders,
+                              String pointer) throws IOException {
+
+        boolean indexed = pointer != null && BundleIndex.isEntry(pointer) && (node instanceof Map || node instanceof List);
+        long[] starts = indexed ? new long[generators.size()] : null;
+        if (node instanceof Map) {
+            Map<Object, Object> map = BundlerProcessor.castIt(node);
+            for (JsonGenerator g : generators) {
+                g.writeStartObject();
+            }
+            if (indexed) {
+                start(recorders, starts);
+            }
+            boolean above = pointer != null && BundleIndex.isAbove(pointer);
+            for (Map.Entry<Object, Object> e : map.entrySet()) {
+                writeFieldName(e.getKey(), generators);
+                write(e.getValue(), generators, recorders, above ? BundleIndex.child(pointer, e.getKey()) : null);
+            }
+            for (JsonGenerator g : generators) {
+                g.writeEndObject();
+            }
+        } else if (node instanceof List) {
+            List<Object> list = BundlerProcessor.castIt(node);
+            for (JsonGenerator g : generators) {
+                g.writeStartArray();
+            }
+            if (indexed) {
+                start(recorders, starts);
+            }
+            for (Object o : list) {
+                write(o, generators, recorders, null);
+            }
+            for (JsonGenerator g : generators) {
+                g.writeEndArray();
+            }
+        } else {
+            for (JsonGenerator g : generators) {
+                writeScalar(node, g);
+            }
+        }
+        if (indexed) {
+            for (int i = 0; i < starts.length; i++) {
+                if (recorders.get(i) != null) {
+                    recorders.get(i).add(pointer, starts[i]);
+                }
+            }
+        }
+    }
+
+    private static void start(List<BundleIndex.Recorder> recorders, long[] starts) {
+
+        for (int i = 0; i < starts.length; i++) {
+            if (recorders.get(i) != null) {
+                // the value starts with the bracket just written
+                starts[i] = recorders.get(i).position() - 1;
+            }
+        }
+    }
+
+    private static void writeFieldName(Object key, List<JsonGenerator> generators) throws IOException {
+
+        String name = String.valueOf(key);
+        boolean id = key instanceof Integer || key instanceof Long;
+        for (JsonGenerator g : generators) {
+            if (id && g instanceof YAMLGenerator) {
+                // integer keys such as response codes stay unquoted in YAML
+                g.writeFieldId(((Number) key).longValue());
+            } else {
+                // binary formats such as CBOR would write an integer key, while keys are names in JSON
+                g.writeFieldName(name);
+            }
+        }
+    }
+
+    private static void writeScalar(Object value, JsonGenerator g) throws IOException {
+
+        if (value == null) {
+            g.writeNull();
+        } else if (value instanceof String) {
+            g.writeString((String) value);
+        } else if (value instanceof Integer) {
+            g.writeNumber((Integer) value);
+        } else if (value instanceof Long) {
+            g.writeNumber((Long) value);
+        } else if (value instanceof Double) {
+            g.writeNumber((Double) value);
+        } else if (value instanceof Boolean) {
+            g.writeBoolean((Boolean) value);
+        } else {
+            // dates, big numbers, binary and the like
+            g.writeObject(value);
+        }
+    }
+}
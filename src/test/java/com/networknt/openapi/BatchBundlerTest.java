@@ -0,0 +1,82 @@
+package com.networknt.openapi;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BatchBundlerTest {
+
+    @Test
+    public void testBatch() throws Exception {
+        Path base = Paths.get("target/test-classes");
+        List<Path> specs = Arrays.asList(Paths.get("openapi.spec.yaml"), Paths.get("geojsonservice.yml"));
+        BatchBundler batch = new BatchBundler(base, specs);
+        batch.setOutputDir(Paths.get("target/batch"));
+        batch.setThreads(2);
+        List<BatchBundler.Result> results = batch.call();
+        Assert.assertEquals(2, results.size());
+        for (BatchBundler.Result r : results) {
+            Assert.assertTrue(r.getSpec().toString(), r.isSuccess());
+        }
+        Assert.assertTrue(Files.exists(Paths.get("target/batch", "openapi.spec.bundled.yaml")));
+        Assert.assertTrue(Files.exists(Paths.get("target/batch", "geojsonservice.bundled.yaml")));
+    }
+
+    @Test
+    public void testDuplicateTargets() throws Exception {
+        Path base = Paths.get("target/test-classes");
+        List<Path> specs = Arrays.asList(Paths.get("openapi.spec.yaml"), Paths.get("geojsonservice.yml"));
+        BatchBundler batch = new BatchBundler(base, specs);
+        batch.setOutputDir(Paths.get("target/batch-duplicate"));
+        batch.setOutputFile("openapi.bundled");
+        try {
+            batch.call();
+            Assert.fail("specs bundled to the same files not reported");
+        } catch (BundlerException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("openapi.bundled"));
+        }
+        Assert.assertFalse(Files.exists(Paths.get("target/batch-duplicate")));
+    }
+
+    @Test
+    public void testFindSpecs() throws Exception {
+        List<Path> specs = BatchBundler.findSpecs(Paths.get("target/test-classes"), "geojson/**.yml");
+        Assert.assertEquals(9, specs.size());
+
+        // **/ also matches the files of the directory itself
+        specs = BatchBundler.findSpecs(Paths.get("target/test-classes"), "**/openapi.spec.yaml");
+        Assert.assertEquals(Collections.singletonList(Paths.get("target/test-classes/openapi.spec.yaml").toAbsolutePath()), specs);
+    }
+
+    @Test
+    public void testGraph() throws Exception {
+        Path base = Paths.get("target/test-classes");
+        List<Path> specs = Arrays.asList(Paths.get("local/openapi.yaml"), Paths.get("prune/openapi.yaml"), Paths.get("missing/openapi.yaml"));
+        BatchBundler batch = new BatchBundler(base, specs);
+        batch.setThreads(2);
+        DependencyGraph graph = batch.graph();
+
+        Assert.assertEquals(3, graph.getSpecs().size());
+        Map<String, Object> map = graph.toMap();
+        Assert.assertEquals(Arrays.asList("local/pet.yaml"), ((Map<?, ?>) map.get("files")).get("local/openapi.yaml"));
+        Assert.assertEquals(Arrays.asList("local/owner.yaml#/Owner", "local/pet.yaml#/Common/properties/name"),
+                            ((Map<?, ?>) map.get("references")).get("local/pet.yaml#/Pet"));
+
+        // specs that could not be resolved are always affected
+        Assert.assertEquals(new TreeSet<>(Arrays.asList("local/openapi.yaml", "missing/openapi.yaml")),
+                            graph.affected(Collections.singletonList(base.resolve("local/owner.yaml"))));
+        Assert.assertEquals(new TreeSet<>(Arrays.asList("missing/openapi.yaml", "prune/openapi.yaml")),
+                            graph.affected(Collections.singletonList(base.resolve("prune/models.yaml"))));
+
+        StringBuilder dot = new StringBuilder();
+        graph.writeDot(dot, false);
+        Assert.assertTrue(dot.toString().contains("\"local/pet.yaml\" -> \"local/owner.yaml\";"));
+    }
+}
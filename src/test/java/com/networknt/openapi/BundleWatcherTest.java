@@ -0,0 +1,123 @@
+package com.networknt.openapi;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.BooleanSupplier;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BundleWatcherTest {
+
+    @Test
+    public void testRebundleOnChange() throws Exception {
+        Path src = Paths.get("target/watch");
+        BundlerProcessorTest.copyTree(Paths.get("target/test-classes"), src);
+        Path output = Paths.get("target/watch-out", "geojsonservice.yml");
+        Files.deleteIfExists(output);
+
+        Thread thread = watch(src.resolve("geojsonservice.yml"), Paths.get("target/watch-out"));
+        try {
+            Assert.assertTrue(waitFor(output, "title: Geometry"));
+
+            Path model = src.resolve("geojson/type/GeoJsonPoint.v1.yml");
+            String content = new String(Files.readAllBytes(model));
+            Files.write(model, content.replace("title: Point", "title: Point2D").getBytes());
+            Assert.assertTrue(waitFor(output, "title: Point2D"));
+        } finally {
+            thread.interrupt();
+            thread.join();
+        }
+    }
+
+    @Test
+    public void testRecoverFromBrokenSpec() throws Exception {
+        Path src = Paths.get("target/watch-broken");
+        BundlerProcessorTest.copyTree(Paths.get("target/test-classes/local"), src);
+        Path spec = src.resolve("openapi.yaml");
+        String content = new String(Files.readAllBytes(spec));
+        Files.write(spec, content.replace("$ref: 'pet.yaml#/Pet'", "$ref: [pet.yaml").getBytes());
+        Path output = Paths.get("target/watch-broken-out", "openapi.yaml");
+        Files.deleteIfExists(output);
+
+        Thread thread = watch(spec, Paths.get("target/watch-broken-out"));
+        try {
+            Thread.sleep(500);
+            Assert.assertFalse(Files.exists(output));
+
+            Files.write(spec, content.getBytes());
+            Assert.assertTrue(waitFor(output, "title: Local reference test"));
+        } finally {
+            thread.interrupt();
+            thread.join();
+        }
+    }
+
+    @Test
+    public void testRebundleOnDelete() throws Exception {
+        Path src = Paths.get("target/watch-delete");
+        BundlerProcessorTest.deleteTree(src);
+        BundlerProcessorTest.copyTree(Paths.get("target/test-classes/local"), src);
+        Path spec = src.resolve("openapi.yaml");
+        Path output = Paths.get("target/watch-delete-out", "openapi.yaml");
+        Files.deleteIfExists(output);
+
+        BundleWatcher watcher = new BundleWatcher(() -> new BundlerProcessor(spec, Paths.get("target/watch-delete-out")));
+        Thread thread = watch(watcher);
+        try {
+            Assert.assertTrue(waitFor(output, "title: Local reference test"));
+            Assert.assertFalse(watcher.isFailing());
+
+            // the parsed copy in the cache must not hide the deletion
+            Path pet = src.resolve("pet.yaml");
+            byte[] content = Files.readAllBytes(pet);
+            Files.delete(pet);
+            Assert.assertTrue(waitFor(watcher::isFailing));
+
+            Files.write(pet, content);
+            Assert.assertTrue(waitFor(() -> !watcher.isFailing()));
+        } finally {
+            thread.interrupt();
+            thread.join();
+        }
+    }
+
+    private static Thread watch(Path spec, Path outputDir) {
+        return watch(new BundleWatcher(() -> new BundlerProcessor(spec, outputDir)));
+    }
+
+    private static Thread watch(BundleWatcher watcher) {
+        watcher.setDebounceMillis(50);
+        Thread thread = new Thread(() -> {
+            try {
+                watcher.watch();
+            } catch (InterruptedException e) {
+                // stopped
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static boolean waitFor(Path output, String text) throws Exception {
+        for (int i = 0; i < 200; i++) {
+            if (Files.exists(output) && new String(Files.readAllBytes(output)).contains(text)) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) throws Exception {
+        for (int i = 0; i < 200; i++) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+}
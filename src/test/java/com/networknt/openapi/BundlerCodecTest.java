@@ -0,0 +1,67 @@
+package com.networknt.openapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.yaml.snakeyaml.error.YAMLException;
+
+public class BundlerCodecTest {
+
+    private static final String ALIASES = "a: &a [x, y]\nb: [*a, *a]\nc: [*a, *a]\n";
+
+    @Test
+    public void testRead() throws Exception {
+        Map<String, Object> map = BundlerCodec.getDefault().read(Paths.get("target/test-classes", "status.yaml"));
+        Assert.assertTrue(map.containsKey("StatusItem"));
+    }
+
+    @Test
+    public void testAliasLimit() throws Exception {
+        Path file = Paths.get("target", "aliases.yaml");
+        Files.write(file, ALIASES.getBytes());
+        Map<String, Object> map = new BundlerCodec(BundlerCodec.DEFAULT_MAX_DOCUMENT_SIZE, 4).read(file);
+        Assert.assertEquals(3, map.size());
+        try {
+            new BundlerCodec(BundlerCodec.DEFAULT_MAX_DOCUMENT_SIZE, 3).read(file);
+            Assert.fail("alias limit not enforced");
+        } catch (YAMLException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = YAMLException.class)
+    public void testDocumentSizeLimit() throws Exception {
+        new BundlerCodec(100, BundlerCodec.DEFAULT_MAX_ALIASES).read(Paths.get("target/test-classes", "status.yaml"));
+    }
+
+    @Test
+    public void testReadOnDemand() throws Exception {
+        BundlerCodec codec = new BundlerCodec(BundlerCodec.DEFAULT_MAX_DOCUMENT_SIZE, BundlerCodec.DEFAULT_MAX_ALIASES, 0);
+        Path yaml = Paths.get("target/test-classes/prune", "models.yaml");
+        Map<String, Object> full = BundlerCodec.getDefault().read(yaml);
+
+        Map<String, Object> lazy = codec.readReference(yaml);
+        Assert.assertTrue(lazy instanceof LazyDocument);
+        Assert.assertEquals(full.get("Dog"), lazy.get("Dog"));
+        Assert.assertFalse(((LazyDocument) lazy).isParsed("Cat"));
+        Assert.assertEquals(full, lazy);
+
+        Path json = Paths.get("target", "models.json");
+        Files.write(json, new ObjectMapper().writeValueAsBytes(full));
+        lazy = codec.readReference(json);
+        Assert.assertTrue(lazy instanceof LazyDocument);
+        Assert.assertEquals(full.get("Collar"), lazy.get("Collar"));
+        Assert.assertFalse(((LazyDocument) lazy).isParsed("Dog"));
+        Assert.assertEquals(full, lazy);
+        Assert.assertEquals(full, codec.read(json));
+
+        // anchors may tie entries together, such files are parsed in full
+        Path aliases = Paths.get("target", "aliases.yaml");
+        Files.write(aliases, ALIASES.getBytes());
+        Assert.assertFalse(codec.readReference(aliases) instanceof LazyDocument);
+    }
+}
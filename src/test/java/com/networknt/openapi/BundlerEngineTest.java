@@ -0,0 +1,104 @@
+package com.networknt.openapi;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BundlerEngineTest {
+
+    @Test
+    public void testConcurrentBundles() throws Exception {
+        BundlerProcessor bp = new BundlerProcessor(Paths.get("target/test-classes", "geojsonservice.yml"), Paths.get("target/engine"));
+        bp.call();
+        String expected = new String(Files.readAllBytes(Paths.get("target/engine", "geojsonservice.yml")));
+
+        BundlerEngine engine = new BundlerEngine();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> bundles = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                bundles.add(executor.submit(() -> {
+                    BundlerEngine.Bundle bundle = engine.bundle(Paths.get("target/test-classes", "geojsonservice.yml"));
+                    Assert.assertTrue(bundle.isValid());
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    bundle.writeYaml(out);
+                    return out.toString("UTF-8");
+                }));
+            }
+            for (Future<String> bundle : bundles) {
+                Assert.assertEquals(expected, bundle.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(9, engine.getReferenceCache().size());
+    }
+
+    @Test
+    public void testModifiedFile() throws Exception {
+        Path src = Paths.get("target/engine-modified");
+        BundlerProcessorTest.copyTree(Paths.get("target/test-classes/local"), src);
+        BundlerEngine engine = new BundlerEngine();
+        engine.setValidation(false);
+        Assert.assertEquals(64, maxLength(engine.bundle(src.resolve("openapi.yaml"))));
+
+        Path pet = src.resolve("pet.yaml");
+        Files.write(pet, new String(Files.readAllBytes(pet)).replace("maxLength: 64", "maxLength: 128").getBytes());
+        Files.setLastModifiedTime(pet, FileTime.fromMillis(Files.getLastModifiedTime(pet).toMillis() + 2000));
+        Assert.assertEquals(128, maxLength(engine.bundle(src.resolve("openapi.yaml"))));
+    }
+
+    @Test
+    public void testBoundedCache() throws Exception {
+        ReferenceCache cache = new ReferenceCache();
+        cache.setMaxFiles(3);
+        BundlerEngine engine = new BundlerEngine(cache);
+        engine.setValidation(false);
+        engine.bundle(Paths.get("target/test-classes", "geojsonservice.yml"));
+        Assert.assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void testCopyDeepTree() {
+        Map<String, Object> shared = new HashMap<>();
+        shared.put("type", "string");
+        Map<String, Object> root = new HashMap<>();
+        Map<String, Object> node = root;
+        for (int i = 0; i < 100_000; i++) {
+            Map<String, Object> child = new HashMap<>();
+            node.put("items", Arrays.asList(child, shared));
+            node = child;
+        }
+        Map<String, Object> copy = BundlerProcessor.castIt(ReferenceCache.copy(root));
+        Assert.assertNotSame(root, copy);
+        Object first = null;
+        node = copy;
+        for (int i = 0; i < 100_000; i++) {
+            List<Object> items = BundlerProcessor.castIt(node.get("items"));
+            // aliases stay shared in the copy, and are not the original nodes
+            Assert.assertNotSame(shared, items.get(1));
+            if (first == null) {
+                first = items.get(1);
+            }
+            Assert.assertSame(first, items.get(1));
+            node = BundlerProcessor.castIt(items.get(0));
+        }
+        Assert.assertTrue(node.isEmpty());
+    }
+
+    private static int maxLength(BundlerEngine.Bundle bundle) {
+        return BundlerCodec.getDefault().toTree(bundle.getTree()).at("/components/schemas/Pet/properties/name/maxLength").asInt();
+    }
+}
@@ -1,7 +1,23 @@
 package com.networknt.openapi;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -14,6 +30,7 @@ public class BundlerProcessorTest {
         BundlerProcessor bp = new BundlerProcessor("target/test-classes", "openapi.spec.yaml", "target", bundledFile);
         bp.call();
         Assert.assertTrue(Files.exists(Paths.get("target", bundledFile)));
+        Assert.assertTrue(bp.isValid());
     }
 
     @Test
@@ -22,5 +39,429 @@ public class BundlerProcessorTest {
         BundlerProcessor bp = new BundlerProcessor(Paths.get("target/test-classes", "geojsonservice.yml"), Paths.get("target"));
         bp.call();
         Assert.assertTrue(Files.exists(Paths.get("target", "geojsonservice.yml")));
+        Assert.assertTrue(bp.isValid());
+    }
+
+    @Test
+    public void testParallelLoading() throws Exception {
+        BundlerProcessor sequential = new BundlerProcessor(Paths.get("target/test-classes", "geojsonservice.yml"), Paths.get("target/sequential"));
+        sequential.call();
+        BundlerProcessor parallel = new BundlerProcessor(Paths.get("target/test-classes", "geojsonservice.yml"), Paths.get("target/parallel"));
+        parallel.setParallelLoading(true);
+        parallel.call();
+        Assert.assertEquals(new String(Files.readAllBytes(Paths.get("target/sequential", "geojsonservice.yml"))),
+                            new String(Files.readAllBytes(Paths.get("target/parallel", "geojsonservice.yml"))));
+    }
+
+    @Test
+    public void testIncremental() throws Exception {
+        Path src = Paths.get("target/incremental");
+        // a cache record left by an earlier run would skip the first build
+        deleteTree(src);
+        deleteTree(Paths.get("target/incremental-out"));
+        copyTree(Paths.get("target/test-classes"), src);
+        Path spec = src.resolve("geojsonservice.yml");
+
+        BundlerProcessor first = new BundlerProcessor(spec, Paths.get("target/incremental-out"));
+        first.setIncremental(true);
+        first.call();
+        Assert.assertEquals(10, first.getDependencies().size());
+
+        BundlerProcessor unchanged = new BundlerProcessor(spec, Paths.get("target/incremental-out"));
+        unchanged.setIncremental(true);
+        unchanged.call();
+        Assert.assertTrue(unchanged.getDependencies().isEmpty());
+
+        // an output altered since the last run is written again
+        Path output = Paths.get("target/incremental-out/geojsonservice.yml");
+        Files.write(output, "openapi: 3.0.0\n".getBytes());
+        BundlerProcessor altered = new BundlerProcessor(spec, Paths.get("target/incremental-out"));
+        altered.setIncremental(true);
+        altered.call();
+        Assert.assertEquals(10, altered.getDependencies().size());
+        Assert.assertNotEquals("openapi: 3.0.0\n", new String(Files.readAllBytes(output)));
+
+        Path model = src.resolve("geojson/type/GeoJsonPoint.v1.yml");
+        Files.write(model, (new String(Files.readAllBytes(model)) + "\n# changed\n").getBytes());
+        BundlerProcessor changed = new BundlerProcessor(spec, Paths.get("target/incremental-out"));
+        changed.setIncremental(true);
+        changed.call();
+        Assert.assertEquals(10, changed.getDependencies().size());
+    }
+
+    @Test
+    public void testCanonicalOutput() throws Exception {
+        Path src = Paths.get("target/canonical");
+        copyTree(Paths.get("target/test-classes"), src);
+        Path spec = src.resolve("geojsonservice.yml");
+        Path out = Paths.get("target/canonical-out");
+        for (String name : new String[] {"geojsonservice.json", "geojsonservice.yml", "geojsonservice.bundler-cache"}) {
+            Files.deleteIfExists(out.resolve(name));
+        }
+
+        BundlerProcessor first = canonical(spec, out);
+        first.call();
+        Assert.assertTrue(first.isValid());
+        Path json = out.resolve("geojsonservice.json");
+        List<String> names = new ArrayList<>();
+        new ObjectMapper().readTree(json.toFile()).at("/components/schemas").fieldNames().forEachRemaining(names::add);
+        List<String> sorted = new ArrayList<>(names);
+        Collections.sort(sorted);
+        Assert.assertEquals(sorted, names);
+        Assert.assertEquals(0, first.getMetrics().getUnchangedOutputs());
+
+        // a change that does not affect the bundle leaves the outputs untouched and skips validation
+        Files.setLastModifiedTime(json, FileTime.fromMillis(0));
+        Path model = src.resolve("geojson/type/GeoJsonPoint.v1.yml");
+        Files.write(model, (new String(Files.readAllBytes(model)) + "\n# comment\n").getBytes());
+        BundlerProcessor second = canonical(spec, out);
+        second.call();
+        Assert.assertTrue(second.isValid());
+        Assert.assertFalse(second.getMetrics().isSkipped());
+        Assert.assertEquals(2, second.getMetrics().getUnchangedOutputs());
+        Assert.assertEquals(0, second.getMetrics().getValidateMillis(), 0);
+        Assert.assertEquals(0, Files.getLastModifiedTime(json).toMillis());
+    }
+
+    private static BundlerProcessor canonical(Path spec, Path out) {
+        BundlerProcessor bp = new BundlerProcessor(spec, out);
+        bp.setOutputJSON(true);
+        bp.setCanonical(true);
+        bp.setIncremental(true);
+        return bp;
+    }
+
+    static void copyTree(Path from, Path to) throws IOException {
+        try (Stream<Path> files = Files.walk(from)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                Path target = to.resolve(from.relativize(p).toString());
+                if (Files.isDirectory(p)) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.copy(p, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    static void deleteTree(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Test
+    public void testBothFormats() throws Exception {
+        Path out = Paths.get("target/both");
+        BundlerProcessor bp = new BundlerProcessor("target/test-classes", "openapi.spec.yaml", out.toString(), "openapi.bundled");
+        bp.setOutputJSON(true);
+        bp.setOutputYaml(true);
+        bp.call();
+        Assert.assertTrue(Files.exists(out.resolve("openapi.bundled.json")));
+        Assert.assertTrue(Files.exists(out.resolve("openapi.bundled.yaml")));
+        try (Stream<Path> files = Files.list(out)) {
+            Assert.assertFalse(files.anyMatch(p -> p.toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    public void testValidateInvalidSpec() throws Exception {
+        Assert.assertFalse(BundlerProcessor.validateSpecification(Paths.get("target/test-classes", "status.yaml")));
+    }
+
+    @Test
+    public void testLocalPointerInReferencedFile() throws Exception {
+        BundlerProcessor bp = new BundlerProcessor("target/test-classes/local", "openapi.yaml", "target/local", "openapi.bundled.json");
+        bp.setOutputJSON(true);
+        bp.setOutputYaml(false);
+        bp.call();
+        Assert.assertTrue(bp.isValid());
+        JsonNode schemas = new ObjectMapper().readTree(Paths.get("target/local", "openapi.bundled.json").toFile())
+                                             .at("/components/schemas");
+        Assert.assertEquals(64, schemas.at("/Pet/properties/name/maxLength").asInt());
+        Assert.assertEquals(32, schemas.at("/Owner/properties/name/maxLength").asInt());
+    }
+
+    @Test
+    public void testAmbiguousLocalPointer() throws Exception {
+        Path src = Paths.get("target/ambiguous");
+        deleteTree(src);
+        copyTree(Paths.get("target/test-classes/local"), src);
+        // tag.yaml has no Common of its own, both pet.yaml and owner.yaml define one
+        Files.write(src.resolve("tag.yaml"),
+                    "Tag:\n  type: object\n  properties:\n    label:\n      $ref: '#/Common/properties/name'\n".getBytes());
+        Path pet = src.resolve("pet.yaml");
+        String content = new String(Files.readAllBytes(pet));
+        Files.write(pet, content.replace("    owner:\n", "    tag:\n      $ref: 'tag.yaml#/Tag'\n    owner:\n").getBytes());
+
+        BundlerProcessor bp = new BundlerProcessor(src.resolve("openapi.yaml"), Paths.get("target/ambiguous-out"));
+        bp.call();
+        Assert.assertEquals(Collections.singleton("#/Common/properties/name"), bp.getAmbiguousReferences().keySet());
+        Assert.assertEquals(2, bp.getAmbiguousReferences().get("#/Common/properties/name").size());
+
+        bp = new BundlerProcessor(src.resolve("openapi.yaml"), Paths.get("target/ambiguous-out"));
+        bp.setFailOnAmbiguousReferences(true);
+        try {
+            bp.call();
+            Assert.fail("ambiguous local reference accepted");
+        } catch (BundlerException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("#/Common/properties/name"));
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        BundlerMetrics[] reported = new BundlerMetrics[1];
+        BundlerProcessor bp = new BundlerProcessor(Paths.get("target/test-classes", "geojsonservice.yml"), Paths.get("target/metrics"));
+        bp.setMetricsListener(m -> reported[0] = m);
+        bp.call();
+        BundlerMetrics metrics = reported[0];
+        Assert.assertSame(bp.getMetrics(), metrics);
+        Assert.assertEquals(bp.getDependencies().size(), metrics.getFiles());
+        Assert.assertTrue(metrics.getBytesRead() > 0);
+        Assert.assertTrue(metrics.getRefsResolved() > metrics.getFiles());
+        Assert.assertTrue(metrics.getCacheHits() > 0);
+        Assert.assertTrue(metrics.getMaxDepth() > 1);
+        Assert.assertTrue(metrics.getValidateMillis() > 0);
+        Assert.assertEquals(13, metrics.toMap().size());
+    }
+
+    @Test
+    public void testDeepAndRecursiveTrees() {
+        Map<String, Object> root = new LinkedHashMap<>();
+        Map<String, Object> node = root;
+        for (int i = 0; i < 100_000; i++) {
+            Map<String, Object> child = new LinkedHashMap<>();
+            node.put("items", new ArrayList<>(Collections.singletonList(child)));
+            node = child;
+        }
+        node.put("self", root);
+        BundlerProcessor bp = new BundlerProcessor("target/test-classes", "openapi.spec.yaml", "target", "deep");
+        bp.resolveMap(root);
+        Assert.assertEquals(100_001, bp.getMetrics().getMaxDepth());
+    }
+
+    @Test
+    public void testDeduplicate() throws Exception {
+        BundlerProcessor bp = new BundlerProcessor("target/test-classes/dedup", "openapi.yaml", "target/dedup", "openapi.bundled.json");
+        bp.setOutputJSON(true);
+        bp.setOutputYaml(false);
+        bp.setDeduplicate(true);
+        bp.call();
+        Assert.assertTrue(bp.isValid());
+        Assert.assertEquals(1, bp.getSchemaCollisions().size());
+
+        JsonNode bundled = new ObjectMapper().readTree(Paths.get("target/dedup", "openapi.bundled.json").toFile());
+        JsonNode schemas = bundled.at("/components/schemas");
+        Assert.assertEquals(4, schemas.size());
+        Assert.assertEquals("string", schemas.at("/Status/properties/code/type").asText());
+        Assert.assertEquals("integer", schemas.at("/Status_2/properties/code/type").asText());
+        Assert.assertEquals("#/components/schemas/Status_2", bundled.at("/paths/~1d/get/responses/200/content/application~1json/schema/$ref").asText());
+        Assert.assertEquals("#/components/schemas/Address", bundled.at("/paths/~1e/get/responses/200/content/application~1json/schema/$ref").asText());
+    }
+
+    @Test
+    public void testPrune() throws Exception {
+        BundlerProcessor bp = new BundlerProcessor("target/test-classes/prune", "openapi.yaml", "target/prune", "openapi.bundled.json");
+        bp.setOutputJSON(true);
+        bp.setOutputYaml(false);
+        bp.setPrune(true);
+        bp.call();
+        Assert.assertTrue(bp.isValid());
+        Assert.assertEquals(Arrays.asList("#/components/responses/NotFound", "#/components/schemas/Owner", "#/components/schemas/Toy"),
+                            bp.getRemovedComponents());
+
+        JsonNode bundled = new ObjectMapper().readTree(Paths.get("target/prune", "openapi.bundled.json").toFile());
+        JsonNode schemas = bundled.at("/components/schemas");
+        Assert.assertTrue(schemas.has("Pet"));
+        Assert.assertTrue(schemas.has("Collar"));
+        Assert.assertEquals(2, bundled.at("/components/securitySchemes").size());
+        Assert.assertTrue(bundled.at("/components/responses").isMissingNode());
+    }
+
+    @Test
+    public void testSlices() throws Exception {
+        Path out = Paths.get("target/slice");
+        BundlerProcessor bp = new BundlerProcessor("target/test-classes/slice", "openapi.yaml", out.toString(), "openapi.bundled.json");
+        bp.setOutputYaml(false);
+        bp.setOutputJSON(true);
+        BundleSlice owners = new BundleSlice("owners");
+        owners.setOperationIds(Collections.singletonList("listOwners"));
+        bp.setSlices(Arrays.asList(BundleSlice.byTag("pets"), BundleSlice.byPathPrefix("/pets/"), owners));
+        bp.call();
+        Assert.assertTrue(bp.isValid());
+        Assert.assertEquals(Arrays.asList("pets", "pets_", "owners"), new ArrayList<>(bp.getSliceValidationResults().keySet()));
+
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode full = mapper.readTree(out.resolve("openapi.bundled.json").toFile());
+        Assert.assertEquals(3, full.get("paths").size());
+
+        JsonNode pets = mapper.readTree(out.resolve("openapi.bundled.pets.json").toFile());
+        Assert.assertEquals(Arrays.asList("/pets", "/pets/{id}"), names(pets.get("paths")));
+        Assert.assertEquals(Arrays.asList("parameters", "get"), names(pets.at("/paths/~1pets~1{id}")));
+        Assert.assertEquals(Arrays.asList("Pet", "Collar"), names(pets.at("/components/schemas")));
+        Assert.assertEquals(1, pets.get("tags").size());
+
+        JsonNode byPath = mapper.readTree(out.resolve("openapi.bundled.pets_.json").toFile());
+        Assert.assertEquals(Arrays.asList("/pets/{id}"), names(byPath.get("paths")));
+        Assert.assertEquals(Arrays.asList("get", "delete"), names(byPath.at("/paths/~1pets~1{id}")).subList(1, 3));
+
+        // the slices share the resolved tree, which is left whole
+        JsonNode ownersSlice = mapper.readTree(out.resolve("openapi.bundled.owners.json").toFile());
+        Assert.assertEquals(Arrays.asList("/owners"), names(ownersSlice.get("paths")));
+        Assert.assertEquals(3, ownersSlice.at("/components/schemas").size());
+        Assert.assertEquals(full.get("components"), ownersSlice.get("components"));
+
+        // a slice named min would be written over the minified bundle
+        for (String name : new String[] {"min", "v1.min", "smile", "yml"}) {
+            try {
+                new BundleSlice(name);
+                Assert.fail("slice name " + name + " accepted");
+            } catch (BundlerException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains("extension of the output files"));
+            }
+        }
+        Assert.assertEquals("min_", BundleSlice.byTag("min").getName());
+        Assert.assertEquals("v1.min_", BundleSlice.byPathPrefix("/v1.min").getName());
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        Path out = Paths.get("target/index");
+        BundlerProcessor bp = new BundlerProcessor("target/test-classes", "geojsonservice.yml", out.toString(), "openapi.bundled.json");
+        bp.setOutputYaml(false);
+        bp.setOutputJSON(true);
+        bp.setOutputMinifiedJSON(true);
+        bp.setOutputIndex(true);
+        bp.call();
+        Assert.assertTrue(bp.isValid());
+
+        for (String name : new String[] {"openapi.bundled.json", "openapi.bundled.min.json"}) {
+            JsonNode full = new ObjectMapper().readTree(out.resolve(name).toFile());
+            BundleIndex index = BundleIndex.open(out.resolve(name));
+            Assert.assertEquals(full.get("paths").size() + full.at("/components/schemas").size(), index.getPointers().size());
+            for (String pointer : index.getPointers()) {
+                Assert.assertEquals(pointer, full.at(pointer.substring(1)), index.get(pointer));
+            }
+            Assert.assertEquals(full.at("/components/schemas/Geometry/oneOf/0"), index.get("#/components/schemas/Geometry/oneOf/0"));
+            Assert.assertNull(index.get("#/components/schemas/Missing"));
+            Assert.assertNull(index.get("#/info"));
+        }
+
+        // a rebuilt bundle of the same size is only detected when the hash is verified
+        Path json = out.resolve("openapi.bundled.json");
+        String content = new String(Files.readAllBytes(json));
+        Assert.assertTrue(content.contains("Point"));
+        Files.write(json, content.replaceFirst("Point", "Pnint").getBytes());
+        BundleIndex.open(json);
+        try {
+            BundleIndex.open(json, true);
+            Assert.fail("stale index of a bundle of the same size not detected");
+        } catch (BundlerException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("out of date"));
+        }
+
+        Files.write(out.resolve("openapi.bundled.json"), "{}".getBytes());
+        try {
+            BundleIndex.open(out.resolve("openapi.bundled.json"));
+            Assert.fail("stale index not detected");
+        } catch (BundlerException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("out of date"));
+        }
+    }
+
+    private static List<String> names(JsonNode node) {
+        List<String> names = new ArrayList<>();
+        node.fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+
+    @Test
+    public void testBinaryOutputs() throws Exception {
+        BundlerProcessor bp = new BundlerProcessor("target/test-classes", "openapi.spec.yaml", "target/binary", "openapi.bundled");
+        bp.setOutputJSON(true);
+        bp.setOutputMinifiedJSON(true);
+        bp.setOutputSmile(true);
+        bp.setOutputCbor(true);
+        bp.call();
+        Assert.assertTrue(bp.isValid());
+
+        JsonNode json = new ObjectMapper().readTree(Paths.get("target/binary", "openapi.bundled.json").toFile());
+        Path minified = Paths.get("target/binary", "openapi.bundled.min.json");
+        Assert.assertFalse(new String(Files.readAllBytes(minified)).contains("\n"));
+        Assert.assertEquals(json, new ObjectMapper().readTree(minified.toFile()));
+        Assert.assertEquals(json, new ObjectMapper(new SmileFactory()).readTree(Paths.get("target/binary", "openapi.bundled.smile").toFile()));
+        Assert.assertEquals(json, new ObjectMapper(new CBORFactory()).readTree(Paths.get("target/binary", "openapi.bundled.cbor").toFile()));
+    }
+
+    @Test
+    public void testOnDemandParsing() throws Exception {
+        BundlerProcessor bp = new BundlerProcessor("target/test-classes", "openapi.spec.yaml", "target/ondemand", "full.yaml");
+        bp.call();
+        bp = new BundlerProcessor("target/test-classes", "openapi.spec.yaml", "target/ondemand", "lazy.yaml");
+        bp.setCodec(new BundlerCodec(BundlerCodec.DEFAULT_MAX_DOCUMENT_SIZE, BundlerCodec.DEFAULT_MAX_ALIASES, 0));
+        bp.call();
+        Assert.assertTrue(bp.isValid());
+        Assert.assertEquals(new String(Files.readAllBytes(Paths.get("target/ondemand", "full.yaml"))),
+                            new String(Files.readAllBytes(Paths.get("target/ondemand", "lazy.yaml"))));
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        BundlerLimits limits = new BundlerLimits();
+        limits.setMaxFiles(2);
+        assertLimitExceeded("target/test-classes", "openapi.spec.yaml", limits, "files");
+
+        limits = new BundlerLimits();
+        limits.setMaxBytes(Files.size(Paths.get("target/test-classes", "openapi.spec.yaml")));
+        assertLimitExceeded("target/test-classes", "openapi.spec.yaml", limits, "bytes");
+
+        limits = new BundlerLimits();
+        limits.setMaxReferenceDepth(1);
+        assertLimitExceeded("target/test-classes/local", "openapi.yaml", limits, "nested reference files");
+
+        limits = new BundlerLimits();
+        limits.setMaxNestingDepth(5);
+        assertLimitExceeded("target/test-classes", "openapi.spec.yaml", limits, "nested maps");
+
+        // 24 aliases expanding to 4^6 strings
+        StringBuilder bomb = new StringBuilder("openapi: 3.0.0\ninfo:\n  title: Bomb\n  version: 1.0.0\npaths: {}\n");
+        bomb.append("x-0: &l0 [a, a, a, a]\n");
+        for (int i = 1; i <= 6; i++) {
+            String alias = "*l" + (i - 1);
+            bomb.append("x-").append(i).append(": &l").append(i)
+                .append(" [").append(String.join(", ", Collections.nCopies(4, alias))).append("]\n");
+        }
+        Files.createDirectories(Paths.get("target/limits"));
+        Files.write(Paths.get("target/limits", "bomb.yaml"), bomb.toString().getBytes());
+        limits = new BundlerLimits();
+        limits.setMaxNodes(10_000);
+        assertLimitExceeded("target/limits", "bomb.yaml", limits, "nodes");
+
+        // the resolver fails on the aliases before it reaches the missing file, not once the whole spec is resolved
+        Files.write(Paths.get("target/limits", "bomb-missing.yaml"),
+                    (bomb + "x-missing:\n  $ref: 'missing.yaml#/Missing'\n").getBytes());
+        assertLimitExceeded("target/limits", "bomb-missing.yaml", limits, "nodes");
+
+        limits.setMaxNodes(100_000);
+        BundlerProcessor bp = new BundlerProcessor("target/limits", "bomb.yaml", "target/limits", "bomb.bundled.yaml");
+        bp.setLimits(limits);
+        bp.call();
+    }
+
+    private static void assertLimitExceeded(String folder, String file, BundlerLimits limits, String message) throws IOException {
+        BundlerProcessor bp = new BundlerProcessor(folder, file, "target/limits", "limited.yaml");
+        bp.setLimits(limits);
+        try {
+            bp.call();
+            Assert.fail("limit not enforced: " + message);
+        } catch (BundlerLimitException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
     }
 }
@@ -0,0 +1,203 @@
+package com.networknt.openapi;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BundlerServerTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final CountingEngine engine = new CountingEngine();
+    private BundlerServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new BundlerServer(Paths.get("target/test-classes"), engine);
+        server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testBundlePath() throws Exception {
+        BundlerProcessor bp = new BundlerProcessor(Paths.get("target/test-classes", "geojsonservice.yml"), Paths.get("target/server"));
+        bp.call();
+
+        HttpResponse<String> response = get("/bundle?spec=geojsonservice.yml");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new String(Files.readAllBytes(Paths.get("target/server", "geojsonservice.yml"))), response.body());
+
+        Assert.assertEquals(403, get("/bundle?spec=../pom.xml").statusCode());
+        Assert.assertEquals(404, get("/bundle?spec=missing.yaml").statusCode());
+    }
+
+    @Test
+    public void testBundleArchive() throws Exception {
+        HttpResponse<String> response = post("/bundle?spec=local/openapi.yaml&format=json", archive(""));
+        Assert.assertEquals(200, response.statusCode());
+        JsonNode bundled = new ObjectMapper().readTree(response.body());
+        Assert.assertEquals(64, bundled.at("/components/schemas/Pet/properties/name/maxLength").asInt());
+
+        JsonNode stats = new ObjectMapper().readTree(get("/stats").body());
+        Assert.assertEquals(1, stats.get("requests").asInt());
+        Assert.assertEquals(0, stats.get("failures").asInt());
+    }
+
+    @Test
+    public void testCoalescedRequests() throws Exception {
+        HttpRequest get = HttpRequest.newBuilder(uri("/bundle?spec=local/openapi.yaml")).build();
+        assertCoalesced(get);
+        HttpRequest post = HttpRequest.newBuilder(uri("/bundle?spec=local/openapi.yaml"))
+                                      .POST(HttpRequest.BodyPublishers.ofByteArray(archive(""))).build();
+        assertCoalesced(post);
+    }
+
+    /**
+     * Sends the same request concurrently while the first bundling is held, and checks that it is the only one.
+     */
+    private void assertCoalesced(HttpRequest request) throws Exception {
+        int requests = 4;
+        int coalesced = coalesced();
+        engine.bundles.set(0);
+        engine.gate = new CountDownLatch(1);
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (coalesced() < coalesced + requests - 1) {
+            Assert.assertTrue("requests not coalesced", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        engine.gate.countDown();
+        String body = responses.get(0).get().body();
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            Assert.assertEquals(200, response.get().statusCode());
+            Assert.assertEquals(body, response.get().body());
+        }
+        Assert.assertEquals(1, engine.bundles.get());
+    }
+
+    private int coalesced() throws Exception {
+        return new ObjectMapper().readTree(get("/stats").body()).get("coalesced").asInt();
+    }
+
+    @Test
+    public void testReferenceOutsideOfRoot() throws Exception {
+        Path root = Paths.get("target/server-escape");
+        Path spec = root.resolve("escape/openapi.yaml");
+        Files.createDirectories(spec.getParent());
+        Files.write(spec, openapi().replace("pet.yaml#/Pet", "../../../src/test/resources/local/pet.yaml#/Pet").getBytes());
+        BundlerServer escape = new BundlerServer(root, new BundlerEngine());
+        escape.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        try {
+            HttpRequest request = HttpRequest.newBuilder(
+                    URI.create("http://localhost:" + escape.getPort() + "/bundle?spec=escape/openapi.yaml")).build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(403, response.statusCode());
+            Assert.assertTrue(response.body(), response.body().contains("outside of"));
+        } finally {
+            escape.stop();
+        }
+
+        String absolute = Paths.get("target/test-classes/local/pet.yaml").toAbsolutePath().toUri() + "#/Pet";
+        Assert.assertEquals(403, post("/bundle?spec=local/openapi.yaml", archive(absolute)).statusCode());
+        Assert.assertEquals(403, post("/bundle?spec=local/openapi.yaml", archive("../../../../../../../../../../"
+                + Paths.get("target/test-classes/local/pet.yaml").toAbsolutePath() + "#/Pet")).statusCode());
+    }
+
+    @Test
+    public void testArchiveLimits() throws Exception {
+        byte[] zip = archive("");
+        server.setMaxArchiveEntries(2);
+        HttpResponse<String> response = post("/bundle?spec=local/openapi.yaml", zip);
+        Assert.assertEquals(413, response.statusCode());
+        Assert.assertTrue(response.body(), response.body().contains("archive entries"));
+
+        server.setMaxArchiveEntries(BundlerServer.DEFAULT_MAX_ARCHIVE_ENTRIES);
+        server.setMaxArchiveBytes(100);
+        response = post("/bundle?spec=local/openapi.yaml", zip);
+        Assert.assertEquals(413, response.statusCode());
+        Assert.assertTrue(response.body(), response.body().contains("uncompressed archive bytes"));
+    }
+
+    /**
+     * @return an archive of the local spec, referencing the pet model at another location when given
+     */
+    private static byte[] archive(String pet) throws Exception {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(zip)) {
+            for (String name : new String[] {"openapi.yaml", "pet.yaml", "owner.yaml"}) {
+                out.putNextEntry(new ZipEntry("local/" + name));
+                String content = new String(Files.readAllBytes(Paths.get("target/test-classes/local", name)));
+                out.write((pet.isEmpty() ? content : content.replace("pet.yaml#/Pet", pet)).getBytes());
+            }
+        }
+        return zip.toByteArray();
+    }
+
+    private static String openapi() throws Exception {
+        return new String(Files.readAllBytes(Paths.get("target/test-classes/local/openapi.yaml")));
+    }
+
+    /**
+     * Engine counting its bundlings, which wait for the gate when there is one.
+     */
+    private static class CountingEngine extends BundlerEngine {
+
+        private final AtomicInteger bundles = new AtomicInteger();
+        private volatile CountDownLatch gate;
+
+        @Override
+        public Bundle bundle(Path spec, Path rootDir) throws IOException {
+            bundles.incrementAndGet();
+            CountDownLatch latch = gate;
+            if (latch != null) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            return super.bundle(spec, rootDir);
+        }
+    }
+
+    private HttpResponse<String> post(String path, byte[] body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri(path)).POST(HttpRequest.BodyPublishers.ofByteArray(body)).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(path)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.getPort() + path);
+    }
+}
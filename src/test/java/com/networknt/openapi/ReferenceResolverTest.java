@@ -0,0 +1,221 @@
+package com.networknt.openapi;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReferenceResolverTest {
+
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private final AtomicInteger downloads = new AtomicInteger();
+    private final AtomicInteger unchanged = new AtomicInteger();
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        for (String name : new String[] {"pet.yaml", "owner.yaml"}) {
+            files.put("/models/" + name, Files.readAllBytes(Paths.get("target/test-classes/local", name)));
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            // files under /chunked are sent without their length
+            boolean chunked = exchange.getRequestURI().getPath().startsWith("/chunked/");
+            byte[] content = files.get(exchange.getRequestURI().getPath().replaceFirst("^/chunked", ""));
+            if (content == null) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                String etag = "\"" + ContentStore.hash(content) + "\"";
+                exchange.getResponseHeaders().set("ETag", etag);
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    unchanged.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    downloads.incrementAndGet();
+                    exchange.sendResponseHeaders(200, chunked ? 0 : content.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(content);
+                    }
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testHttpResolver() throws Exception {
+        Path dir = Paths.get("target/remote");
+        delete(dir);
+        Files.createDirectories(dir);
+        String url = "http://localhost:" + server.getAddress().getPort() + "/models/pet.yaml";
+        Files.write(dir.resolve("openapi.yaml"), new String(Files.readAllBytes(Paths.get("target/test-classes/local", "openapi.yaml")))
+                .replace("pet.yaml#/Pet", url + "#/Pet").getBytes());
+
+        JsonNode first = bundle(dir, "first");
+        Assert.assertEquals(2, downloads.get());
+        Assert.assertEquals(64, first.at("/components/schemas/Pet/properties/name/maxLength").asInt());
+        Assert.assertEquals(32, first.at("/components/schemas/Owner/properties/name/maxLength").asInt());
+
+        // a later run revalidates the cached files
+        JsonNode second = bundle(dir, "second");
+        Assert.assertEquals(2, downloads.get());
+        Assert.assertEquals(2, unchanged.get());
+        Assert.assertEquals(first, second);
+
+        files.put("/models/owner.yaml", new String(files.get("/models/owner.yaml")).replace("32", "16").getBytes());
+        JsonNode third = bundle(dir, "third");
+        Assert.assertEquals(3, downloads.get());
+        Assert.assertEquals(16, third.at("/components/schemas/Owner/properties/name/maxLength").asInt());
+
+        files.remove("/models/owner.yaml");
+        try {
+            bundle(dir, "fourth");
+            Assert.fail("missing remote file not reported");
+        } catch (BundlerException e) {
+            Assert.assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof NoSuchFileException);
+        }
+    }
+
+    @Test
+    public void testSharedHttpResolver() throws Exception {
+        Path dir = Paths.get("target/remote-shared");
+        delete(dir);
+        Files.createDirectories(dir);
+        String url = "http://localhost:" + server.getAddress().getPort() + "/models/pet.yaml";
+        Files.write(dir.resolve("openapi.yaml"), new String(Files.readAllBytes(Paths.get("target/test-classes/local", "openapi.yaml")))
+                .replace("pet.yaml#/Pet", url + "#/Pet").getBytes());
+
+        // a resolver kept between runs, e.g. by watch or serve, revalidates the files of each run
+        HttpResolver resolver = new HttpResolver(dir.resolve("cache"));
+        bundle(dir, "first", resolver);
+        Assert.assertEquals(2, downloads.get());
+        bundle(dir, "second", resolver);
+        Assert.assertEquals(2, unchanged.get());
+        files.put("/models/owner.yaml", new String(files.get("/models/owner.yaml")).replace("32", "16").getBytes());
+        JsonNode third = bundle(dir, "third", resolver);
+        Assert.assertEquals(3, downloads.get());
+        Assert.assertEquals(16, third.at("/components/schemas/Owner/properties/name/maxLength").asInt());
+
+        // within the max age, the files are not looked up again
+        resolver.setMaxAge(Duration.ofHours(1));
+        files.put("/models/owner.yaml", new String(files.get("/models/owner.yaml")).replace("16", "8").getBytes());
+        JsonNode fourth = bundle(dir, "fourth", resolver);
+        Assert.assertEquals(3, downloads.get());
+        Assert.assertEquals(16, fourth.at("/components/schemas/Owner/properties/name/maxLength").asInt());
+    }
+
+    @Test
+    public void testHttpResolverMaxBytes() throws Exception {
+        Path dir = Paths.get("target/remote-limit");
+        delete(dir);
+        for (String prefix : new String[] {"", "/chunked"}) {
+            HttpResolver resolver = new HttpResolver(dir.resolve("cache"));
+            resolver.setMaxBytes(16);
+            try {
+                resolver.resolve(URI.create("http://localhost:" + server.getAddress().getPort() + prefix + "/models/pet.yaml"));
+                Assert.fail("download beyond the limit not reported");
+            } catch (BundlerLimitException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains("Limit of 16 bytes"));
+            }
+        }
+        Assert.assertFalse(Files.exists(dir.resolve("cache/content")));
+    }
+
+    @Test
+    public void testClasspathResolver() throws Exception {
+        Path dir = Paths.get("target/classpath");
+        delete(dir);
+        Files.createDirectories(dir);
+        Path jar = dir.resolve("models.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (String name : new String[] {"pet.yaml", "owner.yaml"}) {
+                out.putNextEntry(new ZipEntry("shared/" + name));
+                out.write(Files.readAllBytes(Paths.get("target/test-classes/local", name)));
+            }
+        }
+        Files.write(dir.resolve("openapi.yaml"), new String(Files.readAllBytes(Paths.get("target/test-classes/local", "openapi.yaml")))
+                .replace("pet.yaml#/Pet", "classpath:/shared/pet.yaml#/Pet").getBytes());
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {jar.toUri().toURL()}, null)) {
+            BundlerProcessor bp = new BundlerProcessor(dir.toString(), "openapi.yaml", dir.toString(), "bundled.json");
+            bp.setOutputJSON(true);
+            bp.setOutputYaml(false);
+            bp.setResolvers(Arrays.asList(new FileResolver(), new ClasspathResolver(loader, new ContentStore(dir.resolve("store")))));
+            bp.call();
+            Assert.assertTrue(bp.isValid());
+        }
+        JsonNode bundled = new ObjectMapper().readTree(dir.resolve("bundled.json").toFile());
+        Assert.assertEquals(64, bundled.at("/components/schemas/Pet/properties/name/maxLength").asInt());
+        Assert.assertEquals(32, bundled.at("/components/schemas/Owner/properties/name/maxLength").asInt());
+        try (Stream<Path> stored = Files.walk(dir.resolve("store"))) {
+            Assert.assertEquals(2, stored.filter(Files::isRegularFile).count());
+        }
+
+        // references to the classpath are not resolved unless enabled
+        BundlerProcessor bp = new BundlerProcessor(dir.toString(), "openapi.yaml", dir.toString(), "default.json");
+        try {
+            bp.call();
+            Assert.fail("classpath reference resolved without resolver");
+        } catch (BundlerException e) {
+            Assert.assertTrue(e.getMessage(), String.valueOf(e.getCause()).contains("No resolver"));
+        }
+    }
+
+    private JsonNode bundle(Path dir, String name) throws IOException {
+        return bundle(dir, name, new HttpResolver(dir.resolve("cache")));
+    }
+
+    private JsonNode bundle(Path dir, String name, HttpResolver resolver) throws IOException {
+        BundlerProcessor bp = new BundlerProcessor(dir.toString(), "openapi.yaml", dir.toString(), name + ".json");
+        bp.setOutputJSON(true);
+        bp.setOutputYaml(false);
+        bp.setResolvers(Collections.singletonList(resolver));
+        bp.call();
+        Assert.assertTrue(bp.isValid());
+        return new ObjectMapper().readTree(dir.resolve(name + ".json").toFile());
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            List<Path> all = paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            for (Path p : all) {
+                Files.delete(p);
+            }
+        }
+    }
+}